@@ -0,0 +1,65 @@
+package org.infinispan.wfink.playground.ickle.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode throughput of a Company with a growing number of embedded Employees. The Company and Employee are marshalled with the marshallers generated at compile time or, as baseline, with the deprecated MessageMarshaller implementations which read and write the fields by
+ * name. Run with '-prof gc' to see the allocation rate per operation.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompanyMarshallerBenchmark {
+
+  @Param({ "0", "1", "10", "100", "1000", "10000" })
+  public int employees;
+
+  @Param({ "generated", "legacy" })
+  public String marshaller;
+
+  private SerializationContext ctx;
+  private Company company;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws IOException {
+    ctx = "legacy".equals(marshaller) ? SerializationContexts.companyLegacy() : SerializationContexts.company();
+    company = new Company(1, "Red Hat", true);
+    for (int i = 0; i < employees; i++) {
+      company.getEmployees().add(new Employee(i, "Employee " + i, "employee" + i + "@redhat.com", 20 + i % 50, i % 2 == 0));
+    }
+    encoded = ProtobufUtil.toWrappedByteArray(ctx, company);
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return ProtobufUtil.toWrappedByteArray(ctx, company);
+  }
+
+  @Benchmark
+  public Object decode() throws IOException {
+    return ProtobufUtil.fromWrappedByteArray(ctx, encoded);
+  }
+}
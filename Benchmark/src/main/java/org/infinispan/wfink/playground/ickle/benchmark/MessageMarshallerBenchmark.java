@@ -0,0 +1,60 @@
+package org.infinispan.wfink.playground.ickle.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode throughput of a Message with a growing text. The Message is marshalled with the marshaller generated at compile time from the annotations. Run with '-prof gc' to see the allocation rate per operation.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageMarshallerBenchmark {
+
+  @Param({ "0", "100", "10000" })
+  public int textLength;
+
+  private SerializationContext ctx;
+  private Message message;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws IOException {
+    ctx = SerializationContexts.message();
+    char[] text = new char[textLength];
+    Arrays.fill(text, 'x');
+    message = new Message(1, new String(text), "Wolf", "Gustavo");
+    encoded = ProtobufUtil.toWrappedByteArray(ctx, message);
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return ProtobufUtil.toWrappedByteArray(ctx, message);
+  }
+
+  @Benchmark
+  public Object decode() throws IOException {
+    return ProtobufUtil.fromWrappedByteArray(ctx, encoded);
+  }
+}
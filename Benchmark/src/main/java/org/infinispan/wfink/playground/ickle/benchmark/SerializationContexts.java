@@ -0,0 +1,53 @@
+package org.infinispan.wfink.playground.ickle.benchmark;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.wfink.playground.ickle.benchmark.legacy.CompanyMarshaller;
+import org.infinispan.wfink.playground.ickle.benchmark.legacy.EmployeeMarshaller;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.CompanySchema;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.CompanySchemaImpl;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.MessageSchema;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.MessageSchemaImpl;
+
+/**
+ * Create the SerializationContext in the same way as the clients do, but without a connection to a server.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+final class SerializationContexts {
+  private SerializationContexts() {
+  }
+
+  /**
+   * Context with the company.proto schema and the marshallers generated at compile time for Company and Employee, as used by the client.
+   */
+  static SerializationContext company() {
+    SerializationContext ctx = ProtobufUtil.newSerializationContext();
+    CompanySchema schema = new CompanySchemaImpl();
+    schema.registerSchema(ctx);
+    schema.registerMarshallers(ctx);
+    return ctx;
+  }
+
+  /**
+   * Context with the company.proto schema and the field-name based MessageMarshaller implementations for Company and Employee.
+   */
+  static SerializationContext companyLegacy() {
+    SerializationContext ctx = ProtobufUtil.newSerializationContext();
+    new CompanySchemaImpl().registerSchema(ctx);
+    ctx.registerMarshaller(new CompanyMarshaller());
+    ctx.registerMarshaller(new EmployeeMarshaller());
+    return ctx;
+  }
+
+  /**
+   * Context with the message.proto schema and the marshaller generated at compile time for Message, as used by the clients.
+   */
+  static SerializationContext message() {
+    SerializationContext ctx = ProtobufUtil.newSerializationContext();
+    MessageSchema schema = new MessageSchemaImpl();
+    schema.registerSchema(ctx);
+    schema.registerMarshallers(ctx);
+    return ctx;
+  }
+}
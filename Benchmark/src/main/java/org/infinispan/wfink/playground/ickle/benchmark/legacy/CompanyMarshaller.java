@@ -1,8 +1,7 @@
-package org.infinispan.wfink.playground.ickle.hotrod.marshaller;
+package org.infinispan.wfink.playground.ickle.benchmark.legacy;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 import org.infinispan.protostream.MessageMarshaller;
@@ -15,6 +14,8 @@ import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
  *
  * As the MessageMarshaller is marked as deprecated it is recommended to use the approach with annotated Java classes and use the ProtoSchemaBuilder to generate the proto information and Marshaller. The MessageMarshaller will not be removed until there is an alternative way.
  *
+ * The client use the marshallers generated at compile time, this implementation is only kept as baseline for the benchmark.
+ *
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
 @SuppressWarnings("deprecation")
@@ -36,14 +37,14 @@ public class CompanyMarshaller implements MessageMarshaller<Company> {
     final String name = reader.readString("name");
     final Boolean isStockCompany = reader.readBoolean("isStockCompany");
     final List<Employee> employees = reader.readCollection("employee", new ArrayList<Employee>(), Employee.class);
-    final Date created = new Date(reader.readLong("created"));
+    final long created = reader.readLong("created");
 
     Company company = new Company();
     company.setName(name);
     company.setId(id);
     company.setEmployees(employees);
-    company.setIsStockCompany(isStockCompany);
-    company.setCreated(created);
+    company.setIsStockCompany(Boolean.TRUE.equals(isStockCompany));
+    company.setCreatedMillis(created);
     return company;
   }
 
@@ -53,6 +54,6 @@ public class CompanyMarshaller implements MessageMarshaller<Company> {
     writer.writeString("name", company.getName());
     writer.writeBoolean("isStockCompany", company.getIsStockCompany());
     writer.writeCollection("employee", company.getEmployees(), Employee.class);
-    writer.writeLong("created", company.getCreated().getTime());
+    writer.writeLong("created", company.getCreatedMillis());
   }
 }
@@ -1,4 +1,4 @@
-package org.infinispan.wfink.playground.ickle.hotrod.marshaller;
+package org.infinispan.wfink.playground.ickle.benchmark.legacy;
 
 import java.io.IOException;
 
@@ -11,6 +11,8 @@ import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
  *
  * As the MessageMarshaller is marked as deprecated it is recommended to use the approach with annotated Java classes and use the ProtoSchemaBuilder to generate the proto information and Marshaller. The MessageMarshaller will not be removed until there is an alternative way.
  *
+ * The client use the marshallers generated at compile time, this implementation is only kept as baseline for the benchmark.
+ *
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
 @SuppressWarnings("deprecation")
@@ -34,7 +36,7 @@ public class EmployeeMarshaller implements MessageMarshaller<Employee> {
     Integer age = reader.readInt("age");
     boolean engaged = reader.readBoolean("engaged");
 
-    return new Employee(id, name, email, age, engaged);
+    return new Employee(id, name, email, age == null ? Employee.NO_AGE : age, engaged);
   }
 
   @Override
@@ -42,7 +44,7 @@ public class EmployeeMarshaller implements MessageMarshaller<Employee> {
     writer.writeInt("id", employee.getId());
     writer.writeString("name", employee.getName());
     writer.writeString("email", employee.getEmail());
-    writer.writeInt("age", employee.getAge());
+    writer.writeInt("age", employee.hasAge() ? employee.getAge() : null);
     writer.writeBoolean("engaged", employee.isEngaged());
   }
 }
@@ -1,47 +1,88 @@
 package org.infinispan.wfink.playground.ickle.hotrod;
 
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringWriter;
-import java.util.HashSet;
+import static org.infinispan.wfink.playground.ickle.hotrod.query.QueryTemplateRegistry.params;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.infinispan.client.hotrod.RemoteCache;
 import org.infinispan.client.hotrod.RemoteCacheManager;
 import org.infinispan.client.hotrod.Search;
-import org.infinispan.client.hotrod.configuration.ConfigurationBuilder;
-import org.infinispan.client.hotrod.marshall.MarshallerUtil;
-import org.infinispan.commons.marshall.ProtoStreamMarshaller;
-import org.infinispan.protostream.FileDescriptorSource;
-import org.infinispan.protostream.SerializationContext;
-import org.infinispan.protostream.annotations.ProtoSchemaBuilder;
 import org.infinispan.query.dsl.Query;
 import org.infinispan.query.dsl.QueryFactory;
-import org.infinispan.query.remote.client.ProtobufMetadataManagerConstants;
+import org.infinispan.wfink.playground.ickle.hotrod.analytics.ColumnarCompanyStore;
+import org.infinispan.wfink.playground.ickle.hotrod.analytics.ColumnarScan;
+import org.infinispan.wfink.playground.ickle.hotrod.analytics.CompanyPredicate;
+import org.infinispan.wfink.playground.ickle.hotrod.analytics.CompanySnapshot;
+import org.infinispan.wfink.playground.ickle.hotrod.analytics.EmployeePredicate;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.BulkLoadStatistics;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.BulkLoader;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.CacheSnapshot;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.ParallelCacheScanner;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.ScanResult;
+import org.infinispan.wfink.playground.ickle.hotrod.chunked.ChunkedCompany;
+import org.infinispan.wfink.playground.ickle.hotrod.chunked.ChunkedCompanyStore;
 import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.CompanySummary;
 import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
-import org.infinispan.wfink.playground.ickle.hotrod.marshaller.CompanyMarshaller;
-import org.infinispan.wfink.playground.ickle.hotrod.marshaller.EmployeeMarshaller;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.EmployeeIndexListener;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+import org.infinispan.wfink.playground.ickle.hotrod.query.Aggregation;
+import org.infinispan.wfink.playground.ickle.hotrod.query.AggregationResult;
+import org.infinispan.wfink.playground.ickle.hotrod.query.AsyncQueryExecutor;
+import org.infinispan.wfink.playground.ickle.hotrod.query.CorrelatedCompanyQuery;
+import org.infinispan.wfink.playground.ickle.hotrod.query.PagedQuery;
+import org.infinispan.wfink.playground.ickle.hotrod.query.ProjectionColumns;
+import org.infinispan.wfink.playground.ickle.hotrod.query.ProjectionQuery;
+import org.infinispan.wfink.playground.ickle.hotrod.query.QueryTemplateRegistry;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.CompanySchema;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.CompanySchemaImpl;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.SchemaRegistration;
 
 /**
- * A simple client which use a proto file to register the schema and marshaller for Protobuf. The queries are using a simple field and one analyzed for full-text search. If the server side cache does not have Indexing enabled it shows that the full-text query will not work without. This is an
- * example how to use *.proto file and MessageMarshaller implementations to configure protobuf. This has been deprecated and the {@link ProtoSchemaBuilder} should be used to generate the resources from the annotations within the Java Pojos.
+ * A simple client which use the Company and Employee classes with annotations to register the schema and marshaller for Protobuf. The schema and marshallers are generated at compile time by the protostream annotation processor, see {@link CompanySchema}, instead of using a *.proto file
+ * and MessageMarshaller implementations which has been deprecated. The queries show how to access the embedded list of Employees.
  *
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
 public class CompanyQueryHotRodClient {
   private static final String PROTOBUF_DEFINITION_COMPANY = "/playground/company.proto";
+  private static final int LOAD_BATCH_SIZE = 1000;
+  private static final int LOAD_BATCHES_IN_FLIGHT = 4;
+  private static final String DELETE_BY_QUERY_TASK = "ickle-delete-by-query";
+  private static final int DELETE_BATCH_SIZE = 1000;
+  private static final String EMPLOYEE_CACHE = "IcklePlayEmployeeCache";
+  private static final int QUERY_THREADS = 8;
+  private static final int QUERY_QUEUE_CAPACITY = 64;
+  private static final long QUERY_TIMEOUT_SECONDS = 30;
+  private static final String CHUNKED_COMPANY_CACHE = "IcklePlayChunkedCompanyCache";
+  private static final int EMPLOYEE_CHUNK_SIZE = 1000;
+  private static final int SCAN_THREADS = 4;
+  private static final int SCAN_BATCH_SIZE = 1000;
 
   private RemoteCacheManager remoteCacheManager;
   private RemoteCache<Integer, Company> companyCache;
+  private QueryTemplateRegistry queryTemplates;
+  private AsyncQueryExecutor asyncQueries;
+  private RemoteCache<String, Employee> employeeCache;
+  private EmployeeIndexListener employeeIndex;
+  private CorrelatedCompanyQuery correlatedQuery;
+  private ChunkedCompanyStore chunkedStore;
 
   public CompanyQueryHotRodClient(String host, String port, String cacheName) {
-    ConfigurationBuilder remoteBuilder = new ConfigurationBuilder();
-    remoteBuilder.addServer().host(host).port(Integer.parseInt(port)).marshaller(new ProtoStreamMarshaller()); // The Protobuf based marshaller is required for query capabilities
-
-    remoteCacheManager = new RemoteCacheManager(remoteBuilder.build());
+    remoteCacheManager = RemoteCacheManagerFactory.create(host, port);
     companyCache = remoteCacheManager.getCache(cacheName);
 
     if (companyCache == null) {
@@ -49,160 +90,321 @@ public class CompanyQueryHotRodClient {
     }
 
     registerSchemasAndMarshallers();
-  }
 
-  /**
-   * Register the Protobuf schemas and marshallers with the client and then register the schemas with the server too.
-   */
-  private void registerSchemasAndMarshallers() {
-    // Register entity marshallers on the client side ProtoStreamMarshaller
-    // instance associated with the remote cache manager.
-    SerializationContext ctx = MarshallerUtil.getSerializationContext(remoteCacheManager);
-    // register the necessary proto files
-    try {
-      ctx.registerProtoFiles(FileDescriptorSource.fromResources(PROTOBUF_DEFINITION_COMPANY));
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to read protobuf definition '" + PROTOBUF_DEFINITION_COMPANY + "'", e);
+    queryTemplates = new QueryTemplateRegistry(Search.getQueryFactory(companyCache));
+    asyncQueries = new AsyncQueryExecutor(Search.getQueryFactory(companyCache), QUERY_THREADS, QUERY_QUEUE_CAPACITY, QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    // the denormalized employee cache is optional, the correlated queries are skipped if the server does not have it
+    employeeCache = remoteCacheManager.getCache(EMPLOYEE_CACHE);
+    if (employeeCache != null) {
+      employeeIndex = new EmployeeIndexListener(companyCache, employeeCache);
+      employeeIndex.start();
+      correlatedQuery = new CorrelatedCompanyQuery(companyCache, employeeCache);
+    } else {
+      System.out.println("Cache '" + EMPLOYEE_CACHE + "' not found, correlated employee queries are not available");
     }
-    ctx.registerMarshaller(new CompanyMarshaller());
-    ctx.registerMarshaller(new EmployeeMarshaller());
 
-    // register the schemas with the server too
-    final RemoteCache<String, String> protoMetadataCache = remoteCacheManager.getCache(ProtobufMetadataManagerConstants.PROTOBUF_METADATA_CACHE_NAME);
-
-    protoMetadataCache.put(PROTOBUF_DEFINITION_COMPANY, readResource(PROTOBUF_DEFINITION_COMPANY));
-
-    // check for definition error for the registered protobuf schemas
-    String errors = protoMetadataCache.get(ProtobufMetadataManagerConstants.ERRORS_KEY_SUFFIX);
-    if (errors != null) {
-      throw new IllegalStateException("Some Protobuf schema files contain errors:\n" + errors);
+    // the chunked storage is optional as well
+    RemoteCache<String, Object> chunkedCache = remoteCacheManager.getCache(CHUNKED_COMPANY_CACHE);
+    if (chunkedCache != null) {
+      chunkedStore = new ChunkedCompanyStore(chunkedCache, EMPLOYEE_CHUNK_SIZE);
+    } else {
+      System.out.println("Cache '" + CHUNKED_COMPANY_CACHE + "' not found, the chunked storage is not available");
     }
   }
 
   /**
-   * Helper to read the protobuf file to String
-   *
-   * @param resourcePath
-   * @return
+   * Register the Protobuf schemas and marshallers with the client and then register the schemas with the server too. The schema is generated at compile time and only written to the server if it has changed.
    */
-  private String readResource(String resourcePath) {
-    try (InputStream is = getClass().getResourceAsStream(resourcePath)) {
-      InputStreamReader reader = new InputStreamReader(is, "UTF-8");
-      StringWriter writer = new StringWriter();
-      char[] buf = new char[1024];
-      int len;
-      while ((len = reader.read(buf)) != -1) {
-        writer.write(buf, 0, len);
-      }
-      return writer.toString();
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to read from resource '" + resourcePath + "'", e);
-    }
+  private void registerSchemasAndMarshallers() {
+    // use the same name as the former company.proto file to replace the existing definition
+    SchemaRegistration.register(remoteCacheManager, new CompanySchemaImpl(), PROTOBUF_DEFINITION_COMPANY);
   }
 
-  private void runIckleQuery4Company(QueryFactory qf, String query) {
-    Query<Company> q = qf.create("from playground.Company c where " + query);
-    List<Company> results = q.execute().list();
-    System.out.printf("Query %s  : found %d matches\n", query, results.size());
-    for (Company c : results) {
-      System.out.println("   " + c);
+  /**
+   * Start the query for companies. The result is fetched page by page with a template of the query thread and printed while it arrives, the lines are prefixed with the number of the query as the output of concurrent queries is interleaved.
+   *
+   * @param number the number to identify the output of the query
+   * @return completed if the result is printed or the failure is shown
+   */
+  private CompletableFuture<Void> runIckleQuery4Company(int number, String query, Map<String, Object> params) {
+    System.out.printf("Query #%d %s %s :\n", number, query, params);
+    return asyncQueries.<Company> forEach("from playground.Company c where " + query + " order by c.id", params, PagedQuery.DEFAULT_PAGE_SIZE, c -> {
+      // one println per company to keep its employees together
+      StringBuilder out = new StringBuilder(String.format("#%d   %s", number, c));
       if (c.getEmployees().size() > 0) {
-        System.out.println("     Employees:");
+        out.append(String.format("%n#%d     Employees:", number));
         for (Employee e : c.getEmployees()) {
-          System.out.println("       " + e);
+          out.append(String.format("%n#%d       %s", number, e));
         }
       }
-    }
+      System.out.println(out);
+    }).handle((matches, failure) -> {
+      if (failure != null) {
+        System.err.printf("#%d   ICKLE QUERY FAILURE : %s\n", number, failure.getMessage());
+      } else {
+        System.out.printf("#%d   found %d matches\n", number, matches);
+      }
+      return null;
+    });
   }
 
   private void insertCompanies() {
-    System.out.println("Inserting Messages into cache...");
+    System.out.println("Inserting Companies into cache...");
+    List<Company> companies = new ArrayList<>();
     Company c = new Company(1, "Red Hat", true);
     c.getEmployees().add(new Employee(1, "Wolf Fink", "wf@redhat.com", 127, true));
     c.getEmployees().add(new Employee(2, "William", "m@redhat.com", 17, true));
-    companyCache.put(c.getId(), c);
+    companies.add(c);
     c = new Company(2, "JBoss", false);
     c.getEmployees().add(new Employee(3, "Adrian Brock", "ab@jboss.org"));
     c.getEmployees().add(new Employee(4, "Scott Stark", "sst@jboss.org"));
-    companyCache.put(c.getId(), c);
-    c = new Company(3, "Microsoft", true);
-    companyCache.put(c.getId(), c);
-    c = new Company(4, "SAP", true);
-    companyCache.put(c.getId(), c);
-    c = new Company(5, "Orga Systems", false);
-    companyCache.put(c.getId(), c);
+    companies.add(c);
+    companies.add(new Company(3, "Microsoft", true));
+    companies.add(new Company(4, "SAP", true));
+    companies.add(new Company(5, "Orga Systems", false));
+
+    // use batched putAllAsync instead of a synchronous put per entry
+    BulkLoadStatistics stats = new BulkLoader<>(companyCache, LOAD_BATCH_SIZE, LOAD_BATCHES_IN_FLIGHT).load(companies.stream(), Company::getId);
+    System.out.println("  " + stats);
   }
 
-  private void findCompanies() {
-    QueryFactory qf = Search.getQueryFactory(companyCache);
+  /**
+   * Write the companies to a snapshot file, the Protobuf bytes are written as they are stored in the cache.
+   */
+  private void dumpCompanies(Path file) throws IOException {
+    ScanResult result = new CacheSnapshot(companyCache).dump(file, SCAN_THREADS, SCAN_BATCH_SIZE);
+    System.out.printf("Companies written to snapshot %s (%d bytes)\n", file, Files.size(file));
+    System.out.println("  " + result);
+  }
 
-    runIckleQuery4Company(qf, "c.isStockCompany = false");
-    runIckleQuery4Company(qf, "c.employee.name = 'Wolf Fink'");
-    runIckleQuery4Company(qf, "c.employee.age > 100");
+  /**
+   * Load the companies from a snapshot file instead of inserting them, the entries are not unmarshalled.
+   */
+  private void restoreCompanies(Path file) throws IOException {
+    System.out.printf("Restoring Companies from snapshot %s...\n", file);
+    BulkLoadStatistics stats = new CacheSnapshot(companyCache).restore(file, LOAD_BATCH_SIZE, LOAD_BATCHES_IN_FLIGHT);
+    System.out.println("  " + stats);
+  }
+
+  private void findCompanies() {
+    // the queries are independent, so they are executed concurrently and the results are printed as they arrive
+    List<CompletableFuture<Void>> results = new ArrayList<>();
+    results.add(runIckleQuery4Company(1, "c.isStockCompany = :stock", params("stock", false)));
+    results.add(runIckleQuery4Company(2, "c.employee.name = :name", params("name", "Wolf Fink")));
+    results.add(runIckleQuery4Company(3, "c.employee.age > :age", params("age", 100)));
     // example for boolean query; without "=true" it might have not the expected result
-    runIckleQuery4Company(qf, "c.employee.engaged = true");
+    results.add(runIckleQuery4Company(4, "c.employee.engaged = true", params()));
     // example for embedded object check; which is not as expected due to https://issues.jboss.org/browse/ISPN-9766
-    runIckleQuery4Company(qf, "c.employee is not empty");
-    runIckleQuery4Company(qf, "c.employee is empty");
+    results.add(runIckleQuery4Company(5, "c.employee is not empty", params()));
+    results.add(runIckleQuery4Company(6, "c.employee is empty", params()));
     // example of differences between Lucene and RDBMS queries
     // this query return "RedHat" because the relation of employee name AND age is lost
     // because the engine store a flat structure
-    runIckleQuery4Company(qf, "c.employee.name = 'Wolf Fink' and c.employee.age < 100");
-    runIckleQuery4Company(qf, "c.employee.name in ('William') and c.name = 'JBoss'");
+    results.add(runIckleQuery4Company(7, "c.employee.name = :name and c.employee.age < :age", params("name", "Wolf Fink", "age", 100)));
+    results.add(runIckleQuery4Company(8, "c.employee.name in (:name) and c.name = :company", params("name", "William", "company", "JBoss")));
+    CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+
+    // combine the results of two concurrent queries at client side
+    Map<Integer, Company> stockWithOldEmployees = AsyncQueryExecutor.intersection(Company::getId, Arrays.asList(asyncQueries.<Company> submit("from playground.Company c where c.isStockCompany = true", params()),
+        asyncQueries.<Company> submit("from playground.Company c where c.employee.age > :age", params("age", 100)))).join();
+    System.out.println("Stock companies with an employee older than 100 : " + stockWithOldEmployees.keySet());
+    System.out.println("  " + asyncQueries);
+
+    if (correlatedQuery != null) {
+      // wait until the changes of the company cache are written to the employee cache
+      employeeIndex.flush(10, TimeUnit.SECONDS);
+      runCorrelatedQuery("e.name = :name and e.age < :age", params("name", "Wolf Fink", "age", 100));
+      runCorrelatedQuery("e.name = :name and e.age > :age", params("name", "Wolf Fink", "age", 100));
+      System.out.println("  " + employeeIndex);
+    }
   }
 
-  private void removeNonStockCompanyIds() {
+  /**
+   * Query with conditions for the same Employee, the result is correct in contrast to the query at the company cache.
+   */
+  private void runCorrelatedQuery(String employeeCondition, Map<String, Object> params) {
+    System.out.printf("Correlated query %s %s :\n", employeeCondition, params);
+    List<Company> companies = correlatedQuery.find(employeeCondition, params);
+    for (Company c : companies) {
+      System.out.println("   " + c);
+    }
+    System.out.printf("   found %d matches\n", companies.size());
+  }
+
+  /**
+   * Reporting queries which select only the needed fields, the Employee lists are not transferred and unmarshalled.
+   */
+  private void listCompanies() {
+    Query<Object[]> q = queryTemplates.query("select c.id, c.name, c.isStockCompany from playground.Company c order by c.id", params());
+    System.out.println("Company summaries :");
+    for (CompanySummary summary : ProjectionQuery.list(q, row -> new CompanySummary(row.getInt(0), row.getString(1), row.getBoolean(2)))) {
+      System.out.println("   " + summary);
+    }
+
+    q = queryTemplates.query("select c.name from playground.Company c where c.isStockCompany = :stock order by c.name", params("stock", true));
+    try (Stream<String> names = ProjectionQuery.stream(q, row -> row.getString(0), PagedQuery.DEFAULT_PAGE_SIZE)) {
+      System.out.println("Stock companies : " + names.collect(Collectors.joining(", ")));
+    }
+
+    q = queryTemplates.query("select c.id, c.created from playground.Company c order by c.id", params());
+    ProjectionColumns columns = ProjectionQuery.columns(q, PagedQuery.DEFAULT_PAGE_SIZE, int.class, long.class);
+    int[] ids = columns.getInts(0);
+    long[] created = columns.getLongs(1);
+    for (int i = 0; i < columns.size(); i++) {
+      System.out.printf("   company %d created %tF %<tT\n", ids[i], created[i]);
+    }
+  }
+
+  /**
+   * Statistics calculated by the server, only the aggregated rows are transferred.
+   */
+  private void companyStatistics() {
     QueryFactory qf = Search.getQueryFactory(companyCache);
 
-    // as Infinispan 11 implements generics for query a single line will not work as before, so the projection needs to be adjusted
-    // first this is a long example to understand the process in detail
+    AggregationResult byStock = Aggregation.from("playground.Company c").groupBy("c.isStockCompany").count("companies", "c.id").execute(qf);
+    for (AggregationResult.Group g : byStock) {
+      System.out.printf("   stock company=%s : %d companies\n", g.getKey(), g.getLong("companies"));
+    }
 
-    // Option 1 to get the correct result :
-    List<Object[]> keys = qf.<Object[]>create("select c.id from playground.Company c where c.isStockCompany = false").execute().list();
+    // an unset age is indexed as 0, it can be excluded for single employees but not from the flattened employee list of a company
+    if (employeeCache != null) {
+      employeeIndex.flush(10, TimeUnit.SECONDS);
+      AggregationResult.Group ages = Aggregation.from("playground.Employee e").where("e.age > 0").avg("avg", "e.age").min("min", "e.age").max("max", "e.age").execute(Search.getQueryFactory(employeeCache)).single();
+      System.out.printf("   employee age avg=%.1f min=%d max=%d\n", ages.getDouble("avg"), ages.getLong("min"), ages.getLong("max"));
+    } else {
+      AggregationResult.Group ages = Aggregation.from("playground.Company c").avg("avg", "c.employee.age").min("min", "c.employee.age").max("max", "c.employee.age").execute(qf).single();
+      System.out.printf("   employee age avg=%.1f min=%d max=%d (unset ages count as 0)\n", ages.getDouble("avg"), ages.getLong("min"), ages.getLong("max"));
+    }
 
-    // Option 2 :
-    // Query<Object[]> query = qf.create("...");
-    // List<Object[]> list = query.execute().list();
+    AggregationResult perCompany = Aggregation.from("playground.Company c").groupBy("c.name").count("employees", "c.employee.id").execute(qf);
+    for (AggregationResult.Group g : perCompany) {
+      System.out.printf("   %s : %d employees\n", g.getKey(), g.getLong("employees"));
+    }
+  }
 
-    // Option 3 :
-    // List<Object[]> list = (List<Object[]>) qf.create("...").execute().list();
+  /**
+   * Load the companies once into a local columnar store and run the analytics there instead of scanning the cache for each question.
+   */
+  private void analyzeSnapshot() {
+    try (CompanySnapshot snapshot = new CompanySnapshot(companyCache).start()) {
+      ColumnarCompanyStore store = snapshot.getStore();
+      System.out.println("  " + snapshot);
+      System.out.printf("   stock companies : %d\n", ColumnarScan.countCompanies(store, CompanyPredicate.stockCompany()));
+      System.out.printf("   engaged employees : %d\n", ColumnarScan.countEmployees(store, EmployeePredicate.engaged()));
+      System.out.printf("   employee ages : %s\n", ColumnarScan.employeeAges(store, EmployeePredicate.all()));
+      // the conditions are checked for the same Employee, other than the Ickle query
+      int[] ids = ColumnarScan.companyIds(store, CompanyPredicate.anyEmployee(EmployeePredicate.named(store, "Wolf Fink").and(EmployeePredicate.ageLessThan(100))));
+      System.out.printf("   companies with employee 'Wolf Fink' younger than 100 : %s\n", Arrays.toString(ids));
+    }
+  }
 
-    Set<Integer> deleteList = new HashSet<>();
-    for (Object[] key : keys) {
-      deleteList.add((Integer) key[0]);
+  /**
+   * Read the complete cache in parallel, each thread reads the segments of one server. The second scan let the servers filter the companies and returns only the names.
+   */
+  private void scanCompanies() {
+    ParallelCacheScanner<Integer, Company> scanner = new ParallelCacheScanner<>(companyCache, SCAN_THREADS, SCAN_BATCH_SIZE);
+    // a failed segment group can have delivered some companies already, counting per company id does not count them twice if the segments are repeated
+    Map<Integer, Integer> employees = new ConcurrentHashMap<>();
+    ScanResult result = scanner.scan((id, company) -> employees.put(id, company.getEmployees().size()));
+    System.out.println("  " + result);
+    if (!result.isComplete()) {
+      result = scanner.scan(result.getFailedSegments(), (id, company) -> employees.put(id, company.getEmployees().size()));
+      System.out.println("  repeated " + result);
     }
-    System.out.println("Old style result is " + deleteList);
+    System.out.printf("   %d employees in all companies%s\n", employees.values().stream().mapToLong(Integer::longValue).sum(), result.isComplete() ? "" : " (incomplete, segments " + result.getFailedSegments() + " failed)");
 
-    // now an example which uses streams to create the list in one line
+    Query<Object[]> q = Search.getQueryFactory(companyCache).create("select c.name from playground.Company c where c.isStockCompany = true");
+    try (Stream<Map.Entry<Integer, Object[]>> names = scanner.filter(q).stream()) {
+      System.out.println("   stock companies : " + names.map(e -> (String) e.getValue()[0]).sorted().collect(Collectors.joining(", ")));
+    }
+  }
 
-    deleteList = qf.<Object[]>create("select c.id from playground.Company c where c.isStockCompany = false").execute().list().stream().map(row -> (Integer) row[0]).collect(Collectors.toSet());
-    System.out.println("Stream result is " + deleteList); // this result will be the same as the "Old style" before
+  /**
+   * Store a company with many employees in chunks, a change of one employee reads and writes only the header and one chunk instead of all employees.
+   */
+  private void chunkedCompany() {
+    if (chunkedStore == null) {
+      return;
+    }
+    Company large = new Company(100, "Large Company", true);
+    for (int i = 1; i <= 10 * EMPLOYEE_CHUNK_SIZE; i++) {
+      large.getEmployees().add(new Employee(i, "Employee " + i, "e" + i + "@large.com", 20 + i % 45, i % 3 != 0));
+    }
+    chunkedStore.store(large);
+
+    ChunkedCompany company = chunkedStore.get(large.getId());
+    Employee employee = company.getEmployee(4711);
+    employee.setAge(employee.getAge() + 1);
+    company.setEmployee(4711, employee);
+    company.addEmployee(new Employee(10001, "New Employee", "new@large.com", 18, true));
+    System.out.printf("   %s\n", company);
+    System.out.printf("   saved %d of %d chunks and the header\n", chunkedStore.save(company) - 1, company.getChunkCount());
+
+    company = chunkedStore.get(large.getId());
+    int engaged = 0;
+    for (Employee e : company) {
+      if (e.isEngaged()) {
+        engaged++;
+      }
+    }
+    System.out.printf("   %d of %d employees engaged\n", engaged, company.getEmployeeCount());
+    System.out.println("  " + chunkedStore);
+  }
 
-    companyCache.keySet().removeAll(deleteList);
+  /**
+   * Remove all companies which are not a stock company. The query and the removal is executed at server side by the DeleteByQueryTask from the ServerTask module, so the ids are not transferred to the client and removed one by one.
+   */
+  private void removeNonStockCompanyIds() {
+    Map<String, Object> params = new HashMap<>();
+    params.put("query", "select c.id from playground.Company c where c.isStockCompany = false");
+    params.put("batchSize", DELETE_BATCH_SIZE);
+    Integer removed = companyCache.execute(DELETE_BY_QUERY_TASK, params);
+    System.out.println("Removed " + removed + " non stock companies");
   }
 
   private void stop() {
+    asyncQueries.close();
+    if (employeeIndex != null) {
+      employeeIndex.close();
+    }
     remoteCacheManager.stop();
+    QueryMetricsRegistry.getDefault().log();
   }
 
-  public static void main(String[] args) {
-    String host = "localhost";
-    String port = "11222";
+  public static void main(String[] args) throws IOException {
+    // null to use the server_list of the client configuration, see RemoteCacheManagerFactory
+    String host = null;
+    String port = null;
     String cacheName = "IcklePlayCompanyCache";
 
     if (args.length > 0) {
       port = args[0];
     }
     if (args.length > 1) {
-      port = args[1];
+      host = args[1];
     }
     if (args.length > 2) {
       cacheName = args[2];
     }
     CompanyQueryHotRodClient client = new CompanyQueryHotRodClient(host, port, cacheName);
 
-    client.insertCompanies();
+    // with a snapshot file the companies are restored from the file, or inserted and written to the file if it does not exist
+    String snapshot = System.getProperty("ickle.snapshot");
+    if (snapshot != null && Files.exists(Paths.get(snapshot))) {
+      client.restoreCompanies(Paths.get(snapshot));
+    } else {
+      client.insertCompanies();
+      if (snapshot != null) {
+        client.dumpCompanies(Paths.get(snapshot));
+      }
+    }
     client.findCompanies();
+    client.listCompanies();
+    client.companyStatistics();
+    client.analyzeSnapshot();
+    client.scanCompanies();
+    client.chunkedCompany();
 
     client.removeNonStockCompanyIds();
     client.findCompanies();
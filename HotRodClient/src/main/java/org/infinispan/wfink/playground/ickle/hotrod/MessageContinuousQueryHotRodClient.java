@@ -1,22 +1,39 @@
 package org.infinispan.wfink.playground.ickle.hotrod;
 
 import java.io.Console;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.infinispan.client.hotrod.RemoteCache;
 import org.infinispan.client.hotrod.RemoteCacheManager;
 import org.infinispan.client.hotrod.Search;
-import org.infinispan.client.hotrod.configuration.ConfigurationBuilder;
-import org.infinispan.client.hotrod.marshall.MarshallerUtil;
-import org.infinispan.commons.marshall.ProtoStreamMarshaller;
-import org.infinispan.protostream.SerializationContext;
-import org.infinispan.protostream.annotations.ProtoSchemaBuilder;
 import org.infinispan.query.api.continuous.ContinuousQuery;
-import org.infinispan.query.api.continuous.ContinuousQueryListener;
 import org.infinispan.query.dsl.Query;
 import org.infinispan.query.dsl.QueryFactory;
-import org.infinispan.query.remote.client.ProtobufMetadataManagerConstants;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.BulkUpdateStatistics;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.BulkUpdater;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.CacheExporter;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.ExportSink;
 import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.MessageStatus;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.AsyncContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.AsyncContinuousQueryListener.OverflowPolicy;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.CoalescingContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.ContinuousQueryMultiplexer;
 import org.infinispan.wfink.playground.ickle.hotrod.listener.MessageContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.MessageStatusListener;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.ResumableContinuousQuery;
+import org.infinispan.wfink.playground.ickle.hotrod.query.ProjectionListener;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.MessageSchemaImpl;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.SchemaRegistration;
 
 /**
  * A simple client which use the Message class with annotations to generate the schema and marshaller for Protobuf. The client is to show how continuous queries can be used as it will use is to show messages for a registered reader.
@@ -24,18 +41,30 @@ import org.infinispan.wfink.playground.ickle.hotrod.listener.MessageContinuousQu
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
 public class MessageContinuousQueryHotRodClient {
+  private static final int MULTIPLEXER_SHARDS = 4;
+  private static final long MULTIPLEXER_BATCH_MILLIS = 50;
+  private static final int LIST_BATCH_SIZE = 500;
+  private static final int LISTENER_STRIPES = 2;
+  private static final int LISTENER_QUEUE_CAPACITY = 1000;
+  private static final long STATUS_WINDOW_MILLIS = 250;
+  private static final int UPDATE_BATCH_SIZE = 500;
+  private static final int UPDATE_BATCHES_IN_FLIGHT = 4;
+  private static final int UPDATE_RETRIES = 5;
+  private static final String RESUMABLE_QUERY = "select m.version from playground.Message m where m.reader = :reader";
+
   final Console con;
   private RemoteCacheManager remoteCacheManager;
   private RemoteCache<String, Message> messageCache;
-  private ContinuousQuery<String, Message> continuousQuery;
-  private ContinuousQueryListener<String, Message> currentListener;
-
-  public MessageContinuousQueryHotRodClient(Console con, String host, int port, String cacheName) {
+  private ContinuousQueryMultiplexer<String, Message> multiplexer;
+  private final Map<String, AsyncContinuousQueryListener<String, Message>> readerListeners = new HashMap<>();
+  private QueryFactory queryFactory;
+  private ContinuousQuery<String, Message> statusQuery;
+  private final Map<String, StatusWatch> statusWatches = new HashMap<>();
+  private final Map<String, ResumableContinuousQuery<String, Message>> resumedQueries = new HashMap<>();
+
+  public MessageContinuousQueryHotRodClient(Console con, String host, String port, String cacheName) {
     this.con = con;
-    ConfigurationBuilder remoteBuilder = new ConfigurationBuilder();
-    remoteBuilder.addServer().host(host).port(port).marshaller(new ProtoStreamMarshaller()); // The Protobuf based marshaller is required for query capabilities
-
-    remoteCacheManager = new RemoteCacheManager(remoteBuilder.build());
+    remoteCacheManager = RemoteCacheManagerFactory.create(host, port);
     messageCache = remoteCacheManager.getCache(cacheName);
 
     if (messageCache == null) {
@@ -44,62 +73,94 @@ public class MessageContinuousQueryHotRodClient {
 
     registerSchemasAndMarshallers();
 
-    continuousQuery = Search.getContinuousQuery(messageCache);
+    // the QueryFactory registers the types of the query protocol with the client, which are needed to read the continuous query events
+    queryFactory = Search.getQueryFactory(messageCache);
+    statusQuery = Search.getContinuousQuery(messageCache);
+    multiplexer = new ContinuousQueryMultiplexer<>(messageCache, "playground.Message m", "m.reader", Message::getReader, MULTIPLEXER_SHARDS, MULTIPLEXER_BATCH_MILLIS, TimeUnit.MILLISECONDS);
   }
 
   /**
-   * Register the Protobuf schemas and marshallers with the client and then register the schemas with the server too.
+   * Register the Protobuf schemas and marshallers with the client and then register the schemas with the server too. The schema is generated at compile time from the annotations of the Message class and only written to the server if it has changed.
    */
   private void registerSchemasAndMarshallers() {
-    // Register entity marshallers on the client side ProtoStreamMarshaller
-    // instance associated with the remote cache manager.
-    SerializationContext ctx = MarshallerUtil.getSerializationContext(remoteCacheManager);
-
-    // Cache to register the schemas with the server too
-    final RemoteCache<String, String> protoMetadataCache = remoteCacheManager.getCache(ProtobufMetadataManagerConstants.PROTOBUF_METADATA_CACHE_NAME);
+    SchemaRegistration.register(remoteCacheManager, new MessageSchemaImpl(), "message.proto");
+  }
 
-    // generate the message protobuf schema file and marshaller based on the annotations on Message class
-    // and register it with the SerializationContext of the client
-    String msgSchemaFile = null;
-    try {
-      ProtoSchemaBuilder protoSchemaBuilder = new ProtoSchemaBuilder();
-      msgSchemaFile = protoSchemaBuilder.fileName("message.proto").packageName("playground").addClass(Message.class).build(ctx);
-      protoMetadataCache.put("message.proto", msgSchemaFile);
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to build protobuf definition from 'Message class'", e);
+  private void registerContinuousQuery() {
+    String readerName = con.readLine("Enter reader: ");
+    if (readerListeners.containsKey(readerName)) {
+      con.printf("Reader %s is already registered\n", readerName);
+      return;
     }
 
-    // check for definition error for the registered protobuf schemas
-    String errors = protoMetadataCache.get(ProtobufMetadataManagerConstants.ERRORS_KEY_SUFFIX);
-    if (errors != null) {
-      throw new IllegalStateException("Some Protobuf schema files contain errors: " + errors + "\nSchema :\n" + msgSchemaFile);
-    }
-  }
+    // Define the ContinuousQueryListener, the events are processed by worker threads instead of the Hot Rod client event thread
+    AsyncContinuousQueryListener<String, Message> listener = new AsyncContinuousQueryListener<>(new MessageContinuousQueryListener(readerName), LISTENER_STRIPES, LISTENER_QUEUE_CAPACITY, OverflowPolicy.COALESCE_BY_KEY);
 
-  private void registerContinuousQuery() {
+    // Add the listener, all readers share a few continuous queries at server side, wait until the current messages of the reader are delivered
+    multiplexer.subscribe(readerName, listener).join();
+    readerListeners.put(readerName, listener);
+  }
 
-    if (currentListener != null) {
-      unregisterContiniousQuery();
+  /**
+   * Register a reader with its own continuous query which keeps a checkpoint of the messages the reader has seen. If the client is restarted only the messages which are new, changed or removed meanwhile are delivered instead of all messages of the reader.
+   */
+  private void resumeContinuousQuery() {
+    String readerName = con.readLine("Enter reader: ");
+    if (readerListeners.containsKey(readerName)) {
+      con.printf("Reader %s is already registered\n", readerName);
+      return;
     }
 
-    String readerName = con.readLine("Enter reader: ");
-    QueryFactory queryFactory = Search.getQueryFactory(messageCache);
-    Query<Message> query = queryFactory.create("FROM playground.Message m WHERE m.reader = '" + readerName + "'");
+    AsyncContinuousQueryListener<String, Message> listener = new AsyncContinuousQueryListener<>(new MessageContinuousQueryListener(readerName), LISTENER_STRIPES, LISTENER_QUEUE_CAPACITY, OverflowPolicy.COALESCE_BY_KEY);
+    ResumableContinuousQuery<String, Message> query = new ResumableContinuousQuery<>(messageCache, RESUMABLE_QUERY, Collections.singletonMap("reader", readerName), Message::getVersion, Function.identity(),
+        Paths.get(System.getProperty("ickle.checkpoint.dir", "."), readerName + ".checkpoint"), listener).start();
+    System.out.println("Resumed " + query);
+    readerListeners.put(readerName, listener);
+    resumedQueries.put(readerName, query);
+  }
 
-    // Define the ContinuousQueryListener
-    currentListener = new MessageContinuousQueryListener(readerName);
+  private void unregisterContiniousQuery() {
+    String readerName = con.readLine("Enter reader: ");
+    AsyncContinuousQueryListener<String, Message> listener = readerListeners.remove(readerName);
+    if (listener != null) {
+      System.out.println("Unregister Listener " + listener);
+      ResumableContinuousQuery<String, Message> query = resumedQueries.remove(readerName);
+      if (query != null) {
+        // removes the continuous query and writes the checkpoint
+        query.close();
+      } else {
+        multiplexer.unsubscribe(readerName);
+      }
+      listener.close();
+    } else {
+      System.out.println("No listner registered for " + readerName + "!");
+    }
+  }
 
-    // Add the listener and the query
-    continuousQuery.addContinuousQueryListener(query, currentListener);
+  /**
+   * Watch the number of unread messages of a reader. The continuous query select only the id and read status, so the events do not contain the text, and rapid changes of the same message within the window are delivered once.
+   */
+  private void watchStatus() {
+    String readerName = con.readLine("Enter reader: ");
+    if (statusWatches.containsKey(readerName)) {
+      con.printf("Reader %s is already watched\n", readerName);
+      return;
+    }
+    Query<Object[]> query = queryFactory.create("select m.id, m.read from playground.Message m where m.reader = :reader");
+    query.setParameter("reader", readerName);
+    CoalescingContinuousQueryListener<String, MessageStatus> coalescing = new CoalescingContinuousQueryListener<>(new MessageStatusListener(readerName), STATUS_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    ProjectionListener<String, MessageStatus> listener = ProjectionListener.register(statusQuery, query, row -> new MessageStatus(row.getInt(0), row.getBoolean(1)), coalescing);
+    statusWatches.put(readerName, new StatusWatch(listener, coalescing));
   }
 
-  private void unregisterContiniousQuery() {
-    if (currentListener != null) {
-      System.out.println("Unregister Listener " + currentListener);
-      continuousQuery.removeContinuousQueryListener(currentListener);
-      currentListener = null;
+  private void unwatchStatus() {
+    String readerName = con.readLine("Enter reader: ");
+    StatusWatch watch = statusWatches.remove(readerName);
+    if (watch != null) {
+      watch.close();
+      System.out.println("Unregister Listener " + watch.coalescing);
     } else {
-      System.out.println("No listner registered!");
+      System.out.println("No status watch registered for " + readerName + "!");
     }
   }
 
@@ -109,25 +170,49 @@ public class MessageContinuousQueryHotRodClient {
     String reader = con.readLine("Enter reader: ");
     String text = con.readLine("        Text: ");
 
-    Message msg = new Message(id, text, author, reader);
-
-    Message oldMsg = messageCache.put(String.valueOf(id), msg);
+    // the version is used by the resumable continuous query to find changed messages
+    Message oldMsg = MessageWriter.put(messageCache, new Message(id, text, author, reader));
     if (oldMsg != null) {
       con.printf("   Replaced : %s\n", oldMsg);
     }
   }
 
+  /**
+   * Mark all messages of a reader as read. Only the ids of the unread messages are queried, each message is updated with its version so a concurrent change of another client is not overwritten but the message is read and marked again.
+   */
+  public void markRead() {
+    String reader = con.readLine("Enter reader: ");
+    Query<Object[]> query = queryFactory.create("select m.id from playground.Message m where m.reader = :reader and m.read = false and m.id > :lastId order by m.id");
+    query.setParameter("reader", reader);
+    BulkUpdateStatistics stats = new BulkUpdater<>(messageCache, UPDATE_BATCH_SIZE, UPDATE_BATCHES_IN_FLIGHT, UPDATE_RETRIES).withBatchReport(batch -> con.printf("  %s\n", batch)).update(query, row -> (Integer) row[0], row -> String.valueOf(row[0]), message -> {
+      if (message.isRead()) {
+        return null;
+      }
+      message.setRead(true);
+      message.setVersion(MessageWriter.nextVersion(message));
+      return message;
+    });
+    con.printf("  %s\n", stats);
+  }
+
   public void remove() {
     int id = readId();
     messageCache.remove(String.valueOf(id));
   }
 
-  public void list() {
+  public void list() throws IOException {
     con.printf("\n list of messages \n");
-    for (String key : messageCache.keySet()) {
-      con.printf("  Entry  : %s\n", messageCache.get(key));
+    // stream the entries in batches instead of a get() for each key
+    long count = new CacheExporter<>(messageCache, LIST_BATCH_SIZE).export((key, message) -> con.printf("  Entry  : %s\n", message));
+    con.printf("\n %d messages\n", count);
+  }
+
+  public void export() throws IOException {
+    String fileName = con.readLine("Enter file: ");
+    try (Writer writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+      long count = new CacheExporter<>(messageCache, LIST_BATCH_SIZE).export(ExportSink.lines(writer));
+      con.printf("  %d messages exported to %s\n", count, fileName);
     }
-    con.printf("\n");
   }
 
   public void size() {
@@ -149,7 +234,19 @@ public class MessageContinuousQueryHotRodClient {
   }
 
   private void stop() {
-    unregisterContiniousQuery();
+    multiplexer.close();
+    for (ResumableContinuousQuery<String, Message> query : resumedQueries.values()) {
+      query.close();
+    }
+    resumedQueries.clear();
+    for (AsyncContinuousQueryListener<String, Message> listener : readerListeners.values()) {
+      listener.close();
+    }
+    readerListeners.clear();
+    for (StatusWatch watch : statusWatches.values()) {
+      watch.close();
+    }
+    statusWatches.clear();
     remoteCacheManager.stop();
   }
 
@@ -159,14 +256,24 @@ public class MessageContinuousQueryHotRodClient {
         String action = con.readLine(">");
         if ("put".equals(action)) {
           put();
+        } else if ("read".equals(action)) {
+          markRead();
         } else if ("rm".equals(action)) {
           remove();
         } else if ("register".equals(action)) {
           registerContinuousQuery();
+        } else if ("resume".equals(action)) {
+          resumeContinuousQuery();
         } else if ("unregister".equals(action)) {
           unregisterContiniousQuery();
+        } else if ("watch".equals(action)) {
+          watchStatus();
+        } else if ("unwatch".equals(action)) {
+          unwatchStatus();
         } else if ("list".equals(action)) {
           list();
+        } else if ("export".equals(action)) {
+          export();
         } else if ("size".equals(action)) {
           size();
         } else if ("q".equals(action)) {
@@ -179,14 +286,15 @@ public class MessageContinuousQueryHotRodClient {
   }
 
   private void printConsoleHelp() {
-    con.printf("Choose:\n" + "============= \n" + "put   -  put an entry\n" + "rm    -  remove an entry\n" + "list  -  list all entries which are cache\n" + "size  -  number of cache entries\n" + "register    -  register QueryListener\n" + "unregister  -  unregister all QueryListener\n"
+    con.printf("Choose:\n" + "============= \n" + "put   -  put an entry\n" + "read  -  mark all messages of a reader as read\n" + "rm    -  remove an entry\n" + "list  -  list all entries which are cache\n" + "export  -  export all entries to a file\n" + "size  -  number of cache entries\n" + "register    -  register QueryListener for a reader\n" + "resume      -  register QueryListener for a reader which receives only the changes since the last run\n" + "unregister  -  unregister QueryListener of a reader\n" + "watch       -  show the number of unread messages of a reader\n" + "unwatch     -  remove the unread messages watch of a reader\n"
         + "q     -  quit\n");
   }
 
   public static void main(String[] args) {
     final Console con = System.console();
-    String host = "127.0.0.1";
-    int port = 11222;
+    // null to use the server_list of the client configuration, see RemoteCacheManagerFactory
+    String host = null;
+    String port = null;
     String cacheName = "IcklePlayMessageCache";
 
     int argc = 0;
@@ -197,7 +305,7 @@ public class MessageContinuousQueryHotRodClient {
         argc++;
       } else if (args[argc].equals("-port")) {
         argc++;
-        port = Integer.valueOf(args[argc]);
+        port = args[argc];
         argc++;
       } else {
         con.printf("option '%s' unknown\n", args[argc]);
@@ -213,4 +321,22 @@ public class MessageContinuousQueryHotRodClient {
     client.stop();
     System.out.println("\nDone !");
   }
+
+  /**
+   * The listeners of a status watch, the projection listener is registered at the server and delivers to the coalescing listener.
+   */
+  private class StatusWatch {
+    private final ProjectionListener<String, MessageStatus> listener;
+    private final CoalescingContinuousQueryListener<String, MessageStatus> coalescing;
+
+    StatusWatch(ProjectionListener<String, MessageStatus> listener, CoalescingContinuousQueryListener<String, MessageStatus> coalescing) {
+      this.listener = listener;
+      this.coalescing = coalescing;
+    }
+
+    void close() {
+      statusQuery.removeContinuousQueryListener(listener);
+      coalescing.close();
+    }
+  }
 }
@@ -1,19 +1,24 @@
 package org.infinispan.wfink.playground.ickle.hotrod;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.infinispan.client.hotrod.RemoteCache;
 import org.infinispan.client.hotrod.RemoteCacheManager;
 import org.infinispan.client.hotrod.Search;
-import org.infinispan.client.hotrod.configuration.ConfigurationBuilder;
-import org.infinispan.client.hotrod.marshall.MarshallerUtil;
-import org.infinispan.commons.marshall.ProtoStreamMarshaller;
-import org.infinispan.protostream.SerializationContext;
-import org.infinispan.protostream.annotations.ProtoSchemaBuilder;
+import org.infinispan.commons.util.CloseableIterator;
 import org.infinispan.query.dsl.Query;
 import org.infinispan.query.dsl.QueryFactory;
-import org.infinispan.query.remote.client.ProtobufMetadataManagerConstants;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.BulkLoadStatistics;
+import org.infinispan.wfink.playground.ickle.hotrod.bulk.BulkLoader;
 import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+import org.infinispan.wfink.playground.ickle.hotrod.query.PagedQuery;
+import org.infinispan.wfink.playground.ickle.hotrod.query.QueryResultCache;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.MessageSchemaImpl;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.SchemaRegistration;
 
 /**
  * A simple client which use the Message class with annotations to generate the schema and marshaller for Protobuf. The queries are using a simple field and one analyzed for full-text search. If the server side cache does not have Indexing enables it shows that the full-text query will not work
@@ -22,14 +27,17 @@ import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
 public class MessageQueryHotRodClient {
+  private static final int LOAD_BATCH_SIZE = 1000;
+  private static final int LOAD_BATCHES_IN_FLIGHT = 4;
+  private static final int RESULT_CACHE_QUERIES = 64;
+  private static final long RESULT_CACHE_TTL_MINUTES = 5;
+
   private RemoteCacheManager remoteCacheManager;
   private RemoteCache<String, Message> messageCache;
+  private QueryResultCache<String, Message> resultCache;
 
   public MessageQueryHotRodClient(String host, String port, String cacheName) {
-    ConfigurationBuilder remoteBuilder = new ConfigurationBuilder();
-    remoteBuilder.addServer().host(host).port(Integer.parseInt(port)).marshaller(new ProtoStreamMarshaller()); // The Protobuf based marshaller is required for query capabilities
-
-    remoteCacheManager = new RemoteCacheManager(remoteBuilder.build());
+    remoteCacheManager = RemoteCacheManagerFactory.create(host, port);
     messageCache = remoteCacheManager.getCache(cacheName);
 
     if (messageCache == null) {
@@ -37,45 +45,29 @@ public class MessageQueryHotRodClient {
     }
 
     registerSchemasAndMarshallers();
+    resultCache = new QueryResultCache<>(messageCache, RESULT_CACHE_QUERIES, RESULT_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
   }
 
   /**
-   * Register the Protobuf schemas and marshallers with the client and then register the schemas with the server too.
+   * Register the Protobuf schemas and marshallers with the client and then register the schemas with the server too. The schema is generated at compile time from the annotations of the Message class and only written to the server if it has changed.
    */
   private void registerSchemasAndMarshallers() {
-    // Register entity marshallers on the client side ProtoStreamMarshaller
-    // instance associated with the remote cache manager.
-    SerializationContext ctx = MarshallerUtil.getSerializationContext(remoteCacheManager);
-
-    // Cache to register the schemas with the server too
-    final RemoteCache<String, String> protoMetadataCache = remoteCacheManager.getCache(ProtobufMetadataManagerConstants.PROTOBUF_METADATA_CACHE_NAME);
-
-    // generate the message protobuf schema file and marshaller based on the annotations on Message class
-    // and register it with the SerializationContext of the client
-    String msgSchemaFile = null;
-    try {
-      ProtoSchemaBuilder protoSchemaBuilder = new ProtoSchemaBuilder();
-      msgSchemaFile = protoSchemaBuilder.fileName("message.proto").packageName("playground").addClass(Message.class).build(ctx);
-      protoMetadataCache.put("message.proto", msgSchemaFile);
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to build protobuf definition from 'Message class'", e);
-    }
-
-    // check for definition error for the registered protobuf schemas
-    String errors = protoMetadataCache.get(ProtobufMetadataManagerConstants.ERRORS_KEY_SUFFIX);
-    if (errors != null) {
-      throw new IllegalStateException("Some Protobuf schema files contain errors: " + errors + "\nSchema :\n" + msgSchemaFile);
-    }
+    SchemaRegistration.register(remoteCacheManager, new MessageSchemaImpl(), "message.proto");
   }
 
   private void runIckleQuery4Message(QueryFactory qf, String query) {
     try {
-      Query<Message> q = qf.create("from playground.Message m where " + query);
-      List<Message> results = q.execute().list();
-      System.out.printf("Query %s  : found %d matches\n", query, results.size());
-      for (Message m : results) {
-        System.out.println(">> " + m);
+      Query<Message> q = qf.create("from playground.Message m where " + query + " order by m.id");
+      System.out.printf("Query %s  :\n", query);
+      // fetch the result page by page instead of materializing the complete list
+      int matches = 0;
+      try (CloseableIterator<Message> results = PagedQuery.iterator(q, PagedQuery.DEFAULT_PAGE_SIZE)) {
+        while (results.hasNext()) {
+          matches++;
+          System.out.println(">> " + results.next());
+        }
       }
+      System.out.printf("   found %d matches\n", matches);
     } catch (Exception e) {
       System.err.println("ICKLE QUERY FAILURE : " + e.getMessage());
     }
@@ -83,14 +75,15 @@ public class MessageQueryHotRodClient {
 
   private void insertMessages() {
     System.out.println("Inserting Messages into cache...");
-    messageCache.put("1", new Message(1, "First message for Ickle query", "Wolf", "Gustavo"));
-    messageCache.put("2", new Message(2, "Second message for Ickle query", "Wolf", "Adrian"));
-    messageCache.put("3", new Message(3, "A notification", "Wolf", "Tristan"));
-    messageCache.put("4", new Message(4, "Another message", "Wolf", "Pedro"));
-    messageCache.put("5", new Message(5, "Another message for Ickle-Query", "Wolf", "Adrian"));
-    messageCache.put("6", new Message(6, "And another message for .Ickle.Query. with dots", "Wolf", "Adrian"));
-    messageCache.put("7", new Message(7, "And another message to check query Ickle will be found", "Wolf", "Adrian"));
-    messageCache.put("8", new Message(8, "And another message to check query MyIckleBla will be found", "Wolf", "Adrian"));
+    List<Message> messages = Arrays.asList(new Message(1, "First message for Ickle query", "Wolf", "Gustavo"), new Message(2, "Second message for Ickle query", "Wolf", "Adrian"), new Message(3, "A notification", "Wolf", "Tristan"),
+        new Message(4, "Another message", "Wolf", "Pedro"), new Message(5, "Another message for Ickle-Query", "Wolf", "Adrian"), new Message(6, "And another message for .Ickle.Query. with dots", "Wolf", "Adrian"),
+        new Message(7, "And another message to check query Ickle will be found", "Wolf", "Adrian"), new Message(8, "And another message to check query MyIckleBla will be found", "Wolf", "Adrian"));
+
+    // the putAll does not check the version, a reader which resumes a ResumableContinuousQuery needs a higher version for each write
+    MessageWriter.setNextVersions(messageCache, messages);
+    // use batched putAllAsync instead of a synchronous put per entry
+    BulkLoadStatistics stats = new BulkLoader<>(messageCache, LOAD_BATCH_SIZE, LOAD_BATCHES_IN_FLIGHT).load(messages.stream(), m -> String.valueOf(m.getId()));
+    System.out.println("  " + stats);
   }
 
   private void findMessages() {
@@ -105,25 +98,43 @@ public class MessageQueryHotRodClient {
     // runIckleQuery(qf, "m.text = 'A notification'");
   }
 
+  /**
+   * Repeat the same queries with the result cache, only the first execution of a query goes to the server. Full-text conditions can not be used here as they are not supported by continuous queries.
+   */
+  private void findMessagesCached() {
+    String query = "from playground.Message m where m.reader = :reader";
+    for (int i = 0; i < 3; i++) {
+      for (String reader : Arrays.asList("Gustavo", "Adrian")) {
+        List<Message> result = resultCache.list(query, Collections.singletonMap("reader", reader));
+        System.out.printf("Cached query reader=%s found %d matches\n", reader, result.size());
+      }
+    }
+    System.out.println("  " + resultCache);
+  }
+
   private void stop() {
+    resultCache.close();
     remoteCacheManager.stop();
+    QueryMetricsRegistry.getDefault().log();
   }
 
   public static void main(String[] args) {
-    String host = "localhost";
-    String port = "11222";
+    // null to use the server_list of the client configuration, see RemoteCacheManagerFactory
+    String host = null;
+    String port = null;
     String cacheName = "IcklePlayMessageCache";
 
     if (args.length > 0) {
       port = args[0];
     }
     if (args.length > 1) {
-      port = args[1];
+      host = args[1];
     }
     MessageQueryHotRodClient client = new MessageQueryHotRodClient(host, port, cacheName);
 
     client.insertMessages();
     client.findMessages();
+    client.findMessagesCached();
 
     client.stop();
     System.out.println("\nDone !");
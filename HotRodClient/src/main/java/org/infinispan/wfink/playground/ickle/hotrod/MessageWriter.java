@@ -0,0 +1,74 @@
+package org.infinispan.wfink.playground.ickle.hotrod;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.infinispan.client.hotrod.Flag;
+import org.infinispan.client.hotrod.MetadataValue;
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+
+/**
+ * Write a Message and increase its version, all clients which write messages must use it. The version is used by the ResumableContinuousQuery to find the messages which are changed since the checkpoint, a write which does not increase the version is not seen by a resumed reader.
+ *
+ * The version is increased with a conditional write, a new message with putIfAbsent and an existing one with replaceWithVersion. If another client has written the message meanwhile, the current version is read again, so concurrent writers never write the same version. A new message starts
+ * with the current time in milliseconds, so a message which is removed and written again has a higher version than the removed one.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class MessageWriter {
+  private static final int MAX_RETRIES = 10;
+
+  private MessageWriter() {
+  }
+
+  /**
+   * Write the message with the next version.
+   *
+   * @return the replaced message or null if it is new
+   * @throws IllegalStateException if the message is changed concurrently by others for each retry
+   */
+  public static Message put(RemoteCache<String, Message> cache, Message message) {
+    String key = String.valueOf(message.getId());
+    for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+      MetadataValue<Message> current = cache.getWithMetadata(key);
+      message.setVersion(nextVersion(current == null ? null : current.getValue()));
+      if (current == null) {
+        // without the flag putIfAbsent returns always null
+        if (cache.withFlags(Flag.FORCE_RETURN_VALUE).putIfAbsent(key, message) == null) {
+          return null;
+        }
+      } else {
+        if (cache.replaceWithVersion(key, message, current.getVersion())) {
+          return current.getValue();
+        }
+      }
+    }
+    throw new IllegalStateException("Message " + key + " not written, it was changed concurrently for " + MAX_RETRIES + " retries");
+  }
+
+  /**
+   * Set the next version for messages which are written together, e.g. with the BulkLoader. The current versions are read with one getAll, this is not atomic and a concurrent write of the same message by another client can get the same version.
+   */
+  public static void setNextVersions(RemoteCache<String, Message> cache, Collection<Message> messages) {
+    Set<String> keys = new HashSet<>();
+    for (Message message : messages) {
+      keys.add(String.valueOf(message.getId()));
+    }
+    Map<String, Message> current = cache.getAll(keys);
+    for (Message message : messages) {
+      message.setVersion(nextVersion(current.get(String.valueOf(message.getId()))));
+    }
+  }
+
+  /**
+   * The version for the next write of a message, the current time if it is newer than the current version, so versions written by different clients stay comparable.
+   *
+   * @param current the message in the cache or null if there is none
+   */
+  public static long nextVersion(Message current) {
+    return current == null ? System.currentTimeMillis() : Math.max(current.getVersion() + 1, System.currentTimeMillis());
+  }
+}
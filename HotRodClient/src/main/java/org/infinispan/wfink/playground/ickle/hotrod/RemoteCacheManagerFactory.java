@@ -0,0 +1,116 @@
+package org.infinispan.wfink.playground.ickle.hotrod;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infinispan.client.hotrod.RemoteCacheManager;
+import org.infinispan.client.hotrod.configuration.ConfigurationBuilder;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.MeteredMarshaller;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+
+/**
+ * Create the RemoteCacheManager for all clients. The configuration uses the Hot Rod client properties, e.g. infinispan.client.hotrod.server_list, connection_pool.max_active, socket_timeout, tcp_no_delay, batch_size, near_cache.mode or client_intelligence. The properties are resolved in
+ * this order, a later one overrides the former:
+ * <ol>
+ * <li>hotrod-client.properties from the classpath with the defaults</li>
+ * <li>hotrod-client-&lt;profile&gt;.properties from the classpath if the profile is selected with -Dickle.profile=&lt;profile&gt;</li>
+ * <li>the file given with -Dickle.hotrod.config=&lt;path&gt;</li>
+ * <li>system properties starting with infinispan.client.hotrod.</li>
+ * <li>host and port given as client arguments</li>
+ * </ol>
+ * The resolved properties are printed, passwords are masked. The marshaller counts the payload of the cache operations and is registered as MBean, see MeteredMarshaller.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class RemoteCacheManagerFactory {
+  public static final String PROFILE_PROPERTY = "ickle.profile";
+  public static final String CONFIG_FILE_PROPERTY = "ickle.hotrod.config";
+  private static final String PREFIX = "infinispan.client.hotrod.";
+  private static final String SERVER_LIST = PREFIX + "server_list";
+  private static final int DEFAULT_PORT = 11222;
+  private static final AtomicInteger CLIENTS = new AtomicInteger();
+
+  private RemoteCacheManagerFactory() {
+  }
+
+  /**
+   * Create a RemoteCacheManager from the resolved properties.
+   *
+   * @param host the server given as argument, null to use the server_list of the properties or localhost if a port is given
+   * @param port the port given as argument, null for the default port
+   */
+  public static RemoteCacheManager create(String host, String port) {
+    Properties properties = resolve(host, port);
+    print(properties);
+    ConfigurationBuilder builder = new ConfigurationBuilder();
+    builder.withProperties(properties);
+    // The Protobuf based marshaller is required for query capabilities, the metered one counts the payload of the cache operations
+    MeteredMarshaller marshaller = new MeteredMarshaller();
+    builder.marshaller(marshaller);
+    QueryMetricsRegistry.registerMBean("type=Marshaller,name=client-" + CLIENTS.incrementAndGet(), marshaller);
+    return new RemoteCacheManager(builder.build());
+  }
+
+  static Properties resolve(String host, String port) {
+    Properties properties = new Properties();
+    loadResource(properties, "/hotrod-client.properties", false);
+
+    String profile = System.getProperty(PROFILE_PROPERTY);
+    if (profile != null && !profile.isEmpty()) {
+      loadResource(properties, "/hotrod-client-" + profile + ".properties", true);
+    }
+
+    String file = System.getProperty(CONFIG_FILE_PROPERTY);
+    if (file != null && !file.isEmpty()) {
+      Path path = Paths.get(file);
+      try (Reader reader = Files.newBufferedReader(path)) {
+        properties.load(reader);
+      } catch (IOException e) {
+        throw new IllegalStateException("Hot Rod client configuration '" + path.toAbsolutePath() + "' can not be read", e);
+      }
+    }
+
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith(PREFIX)) {
+        properties.setProperty(name, System.getProperty(name));
+      }
+    }
+
+    if (host != null || port != null) {
+      properties.setProperty(SERVER_LIST, (host != null ? host : "localhost") + ":" + (port != null ? Integer.parseInt(port) : DEFAULT_PORT));
+    }
+    if (!properties.containsKey(SERVER_LIST)) {
+      properties.setProperty(SERVER_LIST, "localhost:" + DEFAULT_PORT);
+    }
+    return properties;
+  }
+
+  private static void loadResource(Properties properties, String resource, boolean required) {
+    try (InputStream in = RemoteCacheManagerFactory.class.getResourceAsStream(resource)) {
+      if (in == null) {
+        if (required) {
+          throw new IllegalStateException("Hot Rod client profile '" + resource + "' not found in classpath");
+        }
+        return;
+      }
+      properties.load(in);
+    } catch (IOException e) {
+      throw new IllegalStateException("Hot Rod client configuration '" + resource + "' can not be read", e);
+    }
+  }
+
+  private static void print(Properties properties) {
+    System.out.println("Hot Rod client configuration :");
+    for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+      String value = name.toLowerCase().contains("password") ? "*****" : properties.getProperty(name);
+      System.out.printf("   %s = %s\n", name, value);
+    }
+  }
+}
@@ -0,0 +1,316 @@
+package org.infinispan.wfink.playground.ickle.hotrod.analytics;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
+
+/**
+ * A client side copy of the companies and their employees stored column by column for local scans, see {@link ColumnarScan}. The ids and ages are kept in int arrays, the flags in BitSets and the names are dictionary encoded. The employees of a Company are stored in a contiguous range of
+ * the employee columns, each company row holds the start and end of its range.
+ *
+ * The store can be changed while it is used. An update appends a new row and marks the previous row of the Company as deleted, the deleted rows are removed by a compaction if they are more than the half of all company or employee rows. Scans hold the read lock, changes the write lock.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ColumnarCompanyStore {
+  private static final int COMPACT_MIN_DELETED = 1024;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final StringDictionary names = new StringDictionary();
+  private final Map<Integer, Integer> rowById = new HashMap<>();
+
+  // company columns
+  private int companyRows;
+  private int[] companyId = new int[16];
+  private int[] companyName = new int[16];
+  private long[] created = new long[16];
+  private int[] employeeStart = new int[16];
+  private int[] employeeEnd = new int[16];
+  private BitSet stock = new BitSet();
+  private BitSet deleted = new BitSet();
+  private int deletedRows;
+
+  // employee columns
+  private int employeeRows;
+  private int[] employeeId = new int[16];
+  private int[] employeeName = new int[16];
+  private int[] age = new int[16];
+  private BitSet ageNull = new BitSet();
+  private BitSet engaged = new BitSet();
+  private int deletedEmployees;
+
+  /**
+   * Add or replace a Company.
+   */
+  public void upsert(Company company) {
+    lock.writeLock().lock();
+    try {
+      Integer previous = rowById.get(company.getId());
+      if (previous != null) {
+        markDeleted(previous);
+      }
+      rowById.put(company.getId(), append(company));
+      compactIfNeeded();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return whether the Company was part of the store
+   */
+  public boolean remove(int id) {
+    lock.writeLock().lock();
+    try {
+      Integer row = rowById.remove(id);
+      if (row == null) {
+        return false;
+      }
+      markDeleted(row);
+      compactIfNeeded();
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private int append(Company company) {
+    if (companyRows == companyId.length) {
+      int length = companyRows * 2;
+      companyId = Arrays.copyOf(companyId, length);
+      companyName = Arrays.copyOf(companyName, length);
+      created = Arrays.copyOf(created, length);
+      employeeStart = Arrays.copyOf(employeeStart, length);
+      employeeEnd = Arrays.copyOf(employeeEnd, length);
+    }
+    int row = companyRows++;
+    companyId[row] = company.getId();
+    companyName[row] = names.encode(company.getName());
+    created[row] = company.getCreatedMillis();
+    stock.set(row, company.getIsStockCompany());
+    employeeStart[row] = employeeRows;
+    if (company.getEmployees() != null) {
+      for (Employee e : company.getEmployees()) {
+        appendEmployee(e);
+      }
+    }
+    employeeEnd[row] = employeeRows;
+    return row;
+  }
+
+  private void appendEmployee(Employee e) {
+    if (employeeRows == employeeId.length) {
+      int length = employeeRows * 2;
+      employeeId = Arrays.copyOf(employeeId, length);
+      employeeName = Arrays.copyOf(employeeName, length);
+      age = Arrays.copyOf(age, length);
+    }
+    int row = employeeRows++;
+    employeeId[row] = e.getId();
+    employeeName[row] = names.encode(e.getName());
+    age[row] = e.getAge();
+    ageNull.set(row, !e.hasAge());
+    engaged.set(row, e.isEngaged());
+  }
+
+  private void markDeleted(int row) {
+    deleted.set(row);
+    deletedRows++;
+    deletedEmployees += employeeEnd[row] - employeeStart[row];
+  }
+
+  private void compactIfNeeded() {
+    // a company with many employees can fill the employee columns with few updates, so the employee rows are checked as well
+    if (deletedRows >= COMPACT_MIN_DELETED && deletedRows * 2 > companyRows || deletedEmployees >= COMPACT_MIN_DELETED && deletedEmployees * 2 > employeeRows) {
+      compact();
+    }
+  }
+
+  /**
+   * Copy the live rows to new columns, the order of the rows is kept.
+   */
+  private void compact() {
+    int rows = companyRows - deletedRows;
+    int employees = employeeRows - deletedEmployees;
+    int[] newCompanyId = new int[Math.max(16, rows)];
+    int[] newCompanyName = new int[newCompanyId.length];
+    long[] newCreated = new long[newCompanyId.length];
+    int[] newEmployeeStart = new int[newCompanyId.length];
+    int[] newEmployeeEnd = new int[newCompanyId.length];
+    BitSet newStock = new BitSet(rows);
+    int[] newEmployeeId = new int[Math.max(16, employees)];
+    int[] newEmployeeName = new int[newEmployeeId.length];
+    int[] newAge = new int[newEmployeeId.length];
+    BitSet newAgeNull = new BitSet(employees);
+    BitSet newEngaged = new BitSet(employees);
+
+    int row = 0;
+    int employee = 0;
+    for (int r = deleted.nextClearBit(0); r < companyRows; r = deleted.nextClearBit(r + 1)) {
+      newCompanyId[row] = companyId[r];
+      newCompanyName[row] = companyName[r];
+      newCreated[row] = created[r];
+      newStock.set(row, stock.get(r));
+      int count = employeeEnd[r] - employeeStart[r];
+      System.arraycopy(employeeId, employeeStart[r], newEmployeeId, employee, count);
+      System.arraycopy(employeeName, employeeStart[r], newEmployeeName, employee, count);
+      System.arraycopy(age, employeeStart[r], newAge, employee, count);
+      for (int e = 0; e < count; e++) {
+        newAgeNull.set(employee + e, ageNull.get(employeeStart[r] + e));
+        newEngaged.set(employee + e, engaged.get(employeeStart[r] + e));
+      }
+      newEmployeeStart[row] = employee;
+      employee += count;
+      newEmployeeEnd[row] = employee;
+      rowById.put(companyId[r], row);
+      row++;
+    }
+
+    companyId = newCompanyId;
+    companyName = newCompanyName;
+    created = newCreated;
+    employeeStart = newEmployeeStart;
+    employeeEnd = newEmployeeEnd;
+    stock = newStock;
+    deleted = new BitSet();
+    companyRows = row;
+    deletedRows = 0;
+    employeeId = newEmployeeId;
+    employeeName = newEmployeeName;
+    age = newAge;
+    ageNull = newAgeNull;
+    engaged = newEngaged;
+    employeeRows = employee;
+    deletedEmployees = 0;
+  }
+
+  Lock readLock() {
+    return lock.readLock();
+  }
+
+  /**
+   * @return the number of companies
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return rowById.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of employees of all companies
+   */
+  public int employeeCount() {
+    lock.readLock().lock();
+    try {
+      return employeeRows - deletedEmployees;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the dictionary code of the name or -1 if no Company or Employee has this name, used by the predicates to compare names as int
+   */
+  public int nameCode(String name) {
+    lock.readLock().lock();
+    try {
+      return names.lookup(name);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // the accessors below are used by the scans and predicates while the read lock is held
+
+  /**
+   * @return the number of company rows including the deleted ones
+   */
+  int rows() {
+    return companyRows;
+  }
+
+  boolean isDeleted(int row) {
+    return deleted.get(row);
+  }
+
+  public int companyId(int row) {
+    return companyId[row];
+  }
+
+  public int companyNameCode(int row) {
+    return companyName[row];
+  }
+
+  public String companyName(int row) {
+    return names.decode(companyName[row]);
+  }
+
+  public long createdMillis(int row) {
+    return created[row];
+  }
+
+  public boolean isStockCompany(int row) {
+    return stock.get(row);
+  }
+
+  /**
+   * @return the first employee of the company row
+   */
+  public int employeeFrom(int row) {
+    return employeeStart[row];
+  }
+
+  /**
+   * @return the end (exclusive) of the employees of the company row
+   */
+  public int employeeTo(int row) {
+    return employeeEnd[row];
+  }
+
+  public int employeeId(int employee) {
+    return employeeId[employee];
+  }
+
+  public int employeeNameCode(int employee) {
+    return employeeName[employee];
+  }
+
+  public String employeeName(int employee) {
+    return names.decode(employeeName[employee]);
+  }
+
+  public boolean hasAge(int employee) {
+    return !ageNull.get(employee);
+  }
+
+  /**
+   * @return the age or 0 if the age is not set
+   */
+  public int age(int employee) {
+    return age[employee];
+  }
+
+  public boolean isEngaged(int employee) {
+    return engaged.get(employee);
+  }
+
+  @Override
+  public String toString() {
+    lock.readLock().lock();
+    try {
+      return "ColumnarCompanyStore [companies=" + rowById.size() + ", employees=" + (employeeRows - deletedEmployees) + ", deletedRows=" + deletedRows + ", names=" + names.size() + "]";
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package org.infinispan.wfink.playground.ickle.hotrod.analytics;
+
+import java.util.Arrays;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BinaryOperator;
+
+/**
+ * Scans and aggregations for a ColumnarCompanyStore. The company rows are split into ranges which are processed in parallel by the common ForkJoinPool and the partial results are merged. The read lock of the store is held for the whole scan, so a scan sees a consistent state.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class ColumnarScan {
+  /** number of company rows which are scanned by one task without splitting */
+  private static final int SPLIT_THRESHOLD = 4096;
+
+  private ColumnarScan() {
+  }
+
+  /**
+   * @return the number of companies which match the predicate
+   */
+  public static long countCompanies(ColumnarCompanyStore store, CompanyPredicate predicate) {
+    return scan(store, (from, to) -> {
+      long count = 0;
+      for (int r = from; r < to; r++) {
+        if (!store.isDeleted(r) && predicate.test(store, r)) {
+          count++;
+        }
+      }
+      return count;
+    }, Long::sum);
+  }
+
+  /**
+   * @return the number of employees of all companies which match the predicate
+   */
+  public static long countEmployees(ColumnarCompanyStore store, EmployeePredicate predicate) {
+    return scan(store, (from, to) -> {
+      long count = 0;
+      for (int r = from; r < to; r++) {
+        if (!store.isDeleted(r)) {
+          for (int e = store.employeeFrom(r), end = store.employeeTo(r); e < end; e++) {
+            if (predicate.test(store, e)) {
+              count++;
+            }
+          }
+        }
+      }
+      return count;
+    }, Long::sum);
+  }
+
+  /**
+   * @return count, sum, min, max and average of the age of the matching employees, employees without age are ignored
+   */
+  public static LongSummaryStatistics employeeAges(ColumnarCompanyStore store, EmployeePredicate predicate) {
+    return scan(store, (from, to) -> {
+      LongSummaryStatistics stats = new LongSummaryStatistics();
+      for (int r = from; r < to; r++) {
+        if (!store.isDeleted(r)) {
+          for (int e = store.employeeFrom(r), end = store.employeeTo(r); e < end; e++) {
+            if (store.hasAge(e) && predicate.test(store, e)) {
+              stats.accept(store.age(e));
+            }
+          }
+        }
+      }
+      return stats;
+    }, (a, b) -> {
+      a.combine(b);
+      return a;
+    });
+  }
+
+  /**
+   * @return the ids of the matching companies in the order of the store
+   */
+  public static int[] companyIds(ColumnarCompanyStore store, CompanyPredicate predicate) {
+    return scan(store, (from, to) -> {
+      int[] ids = new int[16];
+      int size = 0;
+      for (int r = from; r < to; r++) {
+        if (!store.isDeleted(r) && predicate.test(store, r)) {
+          if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+          }
+          ids[size++] = store.companyId(r);
+        }
+      }
+      return Arrays.copyOf(ids, size);
+    }, (a, b) -> {
+      int[] ids = Arrays.copyOf(a, a.length + b.length);
+      System.arraycopy(b, 0, ids, a.length, b.length);
+      return ids;
+    });
+  }
+
+  private static <R> R scan(ColumnarCompanyStore store, RangeScan<R> scan, BinaryOperator<R> merge) {
+    Lock lock = store.readLock();
+    lock.lock();
+    try {
+      return ForkJoinPool.commonPool().invoke(new ScanTask<>(scan, merge, 0, store.rows()));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @FunctionalInterface
+  private interface RangeScan<R> {
+    R scan(int from, int to);
+  }
+
+  private static class ScanTask<R> extends RecursiveTask<R> {
+    private static final long serialVersionUID = 1L;
+    private final RangeScan<R> scan;
+    private final BinaryOperator<R> merge;
+    private final int from;
+    private final int to;
+
+    ScanTask(RangeScan<R> scan, BinaryOperator<R> merge, int from, int to) {
+      this.scan = scan;
+      this.merge = merge;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected R compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        return scan.scan(from, to);
+      }
+      int middle = (from + to) >>> 1;
+      ScanTask<R> left = new ScanTask<>(scan, merge, from, middle);
+      left.fork();
+      R right = new ScanTask<>(scan, merge, middle, to).compute();
+      return merge.apply(left.join(), right);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.infinispan.wfink.playground.ickle.hotrod.analytics;
+
+/**
+ * Condition for one company row of the ColumnarCompanyStore.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@FunctionalInterface
+public interface CompanyPredicate {
+
+  boolean test(ColumnarCompanyStore store, int row);
+
+  default CompanyPredicate and(CompanyPredicate other) {
+    return (s, r) -> test(s, r) && other.test(s, r);
+  }
+
+  default CompanyPredicate or(CompanyPredicate other) {
+    return (s, r) -> test(s, r) || other.test(s, r);
+  }
+
+  default CompanyPredicate negate() {
+    return (s, r) -> !test(s, r);
+  }
+
+  static CompanyPredicate all() {
+    return (s, r) -> true;
+  }
+
+  static CompanyPredicate stockCompany() {
+    return (s, r) -> s.isStockCompany(r);
+  }
+
+  /**
+   * The dictionary code of the name is resolved when the predicate is created, see {@link EmployeePredicate#named(ColumnarCompanyStore, String)}.
+   */
+  static CompanyPredicate named(ColumnarCompanyStore store, String name) {
+    int code = store.nameCode(name);
+    return (s, r) -> code != StringDictionary.NULL_CODE && s.companyNameCode(r) == code;
+  }
+
+  /**
+   * Match if one Employee of the Company matches all conditions of the predicate, in contrast to the Ickle query where each condition is checked for the flattened list of employees.
+   */
+  static CompanyPredicate anyEmployee(EmployeePredicate predicate) {
+    return (s, r) -> {
+      for (int e = s.employeeFrom(r), end = s.employeeTo(r); e < end; e++) {
+        if (predicate.test(s, e)) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
+}
@@ -0,0 +1,69 @@
+package org.infinispan.wfink.playground.ickle.hotrod.analytics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.Search;
+import org.infinispan.query.api.continuous.ContinuousQuery;
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+
+/**
+ * Load all companies once into a ColumnarCompanyStore and keep it current. A continuous query for all companies delivers the existing entries as joining events while it is registered, the following changes update or remove single companies of the store. So the cache is not
+ * scanned again for a refresh.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class CompanySnapshot implements ContinuousQueryListener<Integer, Company>, AutoCloseable {
+  private final ContinuousQuery<Integer, Company> continuousQuery;
+  private final ColumnarCompanyStore store = new ColumnarCompanyStore();
+  private final AtomicLong updates = new AtomicLong();
+  private final AtomicLong removals = new AtomicLong();
+  private volatile long loadMillis = -1;
+
+  public CompanySnapshot(RemoteCache<Integer, Company> companyCache) {
+    this.continuousQuery = Search.getContinuousQuery(companyCache);
+  }
+
+  /**
+   * Register the continuous query, the method returns after the current companies are loaded.
+   */
+  public CompanySnapshot start() {
+    long start = System.currentTimeMillis();
+    continuousQuery.addContinuousQueryListener("from playground.Company c", this);
+    loadMillis = System.currentTimeMillis() - start;
+    return this;
+  }
+
+  public ColumnarCompanyStore getStore() {
+    return store;
+  }
+
+  @Override
+  public void resultJoining(Integer key, Company value) {
+    store.upsert(value);
+    updates.incrementAndGet();
+  }
+
+  @Override
+  public void resultUpdated(Integer key, Company value) {
+    store.upsert(value);
+    updates.incrementAndGet();
+  }
+
+  @Override
+  public void resultLeaving(Integer key) {
+    store.remove(key);
+    removals.incrementAndGet();
+  }
+
+  @Override
+  public void close() {
+    continuousQuery.removeContinuousQueryListener(this);
+  }
+
+  @Override
+  public String toString() {
+    return "CompanySnapshot [" + store + ", loadMillis=" + loadMillis + ", updates=" + updates + ", removals=" + removals + "]";
+  }
+}
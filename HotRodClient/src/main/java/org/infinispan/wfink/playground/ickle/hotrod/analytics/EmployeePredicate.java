@@ -0,0 +1,48 @@
+package org.infinispan.wfink.playground.ickle.hotrod.analytics;
+
+/**
+ * Condition for one employee row of the ColumnarCompanyStore.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@FunctionalInterface
+public interface EmployeePredicate {
+
+  boolean test(ColumnarCompanyStore store, int employee);
+
+  default EmployeePredicate and(EmployeePredicate other) {
+    return (s, e) -> test(s, e) && other.test(s, e);
+  }
+
+  default EmployeePredicate or(EmployeePredicate other) {
+    return (s, e) -> test(s, e) || other.test(s, e);
+  }
+
+  default EmployeePredicate negate() {
+    return (s, e) -> !test(s, e);
+  }
+
+  static EmployeePredicate all() {
+    return (s, e) -> true;
+  }
+
+  static EmployeePredicate engaged() {
+    return (s, e) -> s.isEngaged(e);
+  }
+
+  static EmployeePredicate ageGreaterThan(int age) {
+    return (s, e) -> s.hasAge(e) && s.age(e) > age;
+  }
+
+  static EmployeePredicate ageLessThan(int age) {
+    return (s, e) -> s.hasAge(e) && s.age(e) < age;
+  }
+
+  /**
+   * Compare the dictionary code of the name, the code is resolved when the predicate is created. So it should be created right before the scan, a name which is added to the store later is not found.
+   */
+  static EmployeePredicate named(ColumnarCompanyStore store, String name) {
+    int code = store.nameCode(name);
+    return (s, e) -> code != StringDictionary.NULL_CODE && s.employeeNameCode(e) == code;
+  }
+}
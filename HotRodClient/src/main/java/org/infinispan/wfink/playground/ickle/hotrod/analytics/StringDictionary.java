@@ -0,0 +1,55 @@
+package org.infinispan.wfink.playground.ickle.hotrod.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary encoding for the names of the columnar store, each distinct String is stored once and the columns hold an int code. The codes are assigned in order and never change, so a code can be compared instead of the String.
+ *
+ * Not thread safe, the access is guarded by the lock of the ColumnarCompanyStore.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+class StringDictionary {
+  static final int NULL_CODE = -1;
+
+  private final Map<String, Integer> codes = new HashMap<>();
+  private String[] values = new String[16];
+  private int size;
+
+  /**
+   * @return the code of the value, a new code is added if the value is unknown
+   */
+  int encode(String value) {
+    if (value == null) {
+      return NULL_CODE;
+    }
+    Integer code = codes.get(value);
+    if (code == null) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      code = size;
+      values[size++] = value;
+      codes.put(value, code);
+    }
+    return code;
+  }
+
+  /**
+   * @return the code of the value or NULL_CODE if the value is unknown
+   */
+  int lookup(String value) {
+    Integer code = value == null ? null : codes.get(value);
+    return code == null ? NULL_CODE : code;
+  }
+
+  String decode(int code) {
+    return code == NULL_CODE ? null : values[code];
+  }
+
+  int size() {
+    return size;
+  }
+}
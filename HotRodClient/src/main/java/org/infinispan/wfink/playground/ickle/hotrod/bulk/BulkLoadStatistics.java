@@ -0,0 +1,67 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and batch latency of a bulk operation. The batch latency is measured from sending a batch until the completion is received.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class BulkLoadStatistics {
+  private final long startNanos = System.nanoTime();
+  private long endNanos;
+  private long entries;
+  private long batches;
+  private long totalBatchNanos;
+  private long minBatchNanos = Long.MAX_VALUE;
+  private long maxBatchNanos;
+
+  synchronized void batchCompleted(int size, long nanos) {
+    entries += size;
+    batches++;
+    totalBatchNanos += nanos;
+    minBatchNanos = Math.min(minBatchNanos, nanos);
+    maxBatchNanos = Math.max(maxBatchNanos, nanos);
+  }
+
+  synchronized void finish() {
+    endNanos = System.nanoTime();
+  }
+
+  public synchronized long getEntries() {
+    return entries;
+  }
+
+  public synchronized long getBatches() {
+    return batches;
+  }
+
+  public synchronized long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos);
+  }
+
+  /**
+   * @return entries per second
+   */
+  public synchronized double getThroughput() {
+    long elapsed = (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+    return elapsed == 0 ? 0 : entries * 1_000_000_000d / elapsed;
+  }
+
+  public synchronized double getAvgBatchMillis() {
+    return batches == 0 ? 0 : totalBatchNanos / 1_000_000d / batches;
+  }
+
+  public synchronized double getMinBatchMillis() {
+    return batches == 0 ? 0 : minBatchNanos / 1_000_000d;
+  }
+
+  public synchronized double getMaxBatchMillis() {
+    return maxBatchNanos / 1_000_000d;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("BulkLoadStatistics [entries=%d, batches=%d, elapsed=%dms, throughput=%.1f/s, batch latency min/avg/max=%.2f/%.2f/%.2fms]", entries, batches, getElapsedMillis(), getThroughput(), getMinBatchMillis(), getAvgBatchMillis(), getMaxBatchMillis());
+  }
+}
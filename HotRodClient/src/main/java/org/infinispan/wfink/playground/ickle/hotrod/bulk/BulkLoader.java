@@ -0,0 +1,129 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.infinispan.client.hotrod.RemoteCache;
+
+/**
+ * A reusable loader to write a large number of entries into a remote cache. Instead of one synchronous put per entry the entries are collected into batches of a configurable size and written with putAllAsync. The number of batches in flight is bounded, if the limit is reached the
+ * producing thread is blocked until a batch has been completed. This is the backpressure to prevent from reading the whole source into memory if the server is slower than the source.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class BulkLoader<K, V> {
+  private final RemoteCache<K, V> cache;
+  private final int batchSize;
+  private final int maxBatchesInFlight;
+
+  /**
+   * @param cache the cache to load
+   * @param batchSize number of entries written by one putAllAsync call
+   * @param maxBatchesInFlight number of batches which can be send without waiting for the completion
+   */
+  public BulkLoader(RemoteCache<K, V> cache, int batchSize, int maxBatchesInFlight) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be positive : " + batchSize);
+    }
+    if (maxBatchesInFlight < 1) {
+      throw new IllegalArgumentException("maxBatchesInFlight must be positive : " + maxBatchesInFlight);
+    }
+    this.cache = cache;
+    this.batchSize = batchSize;
+    this.maxBatchesInFlight = maxBatchesInFlight;
+  }
+
+  /**
+   * Load all values of the stream, the key for each value is calculated by the keyMapper.
+   *
+   * @return the statistics of the load
+   */
+  public BulkLoadStatistics load(Stream<V> values, Function<V, K> keyMapper) {
+    return load(values.iterator(), keyMapper);
+  }
+
+  /**
+   * Load all values of the iterator, the key for each value is calculated by the keyMapper.
+   *
+   * @return the statistics of the load
+   */
+  public BulkLoadStatistics load(Iterator<V> values, Function<V, K> keyMapper) {
+    return loadEntries(new Iterator<Map.Entry<K, V>>() {
+      @Override
+      public boolean hasNext() {
+        return values.hasNext();
+      }
+
+      @Override
+      public Map.Entry<K, V> next() {
+        V value = values.next();
+        return new AbstractMap.SimpleImmutableEntry<>(keyMapper.apply(value), value);
+      }
+    });
+  }
+
+  /**
+   * Load all entries of the iterator. The method will return if all batches are completed.
+   *
+   * @return the statistics of the load
+   * @throws IllegalStateException if one of the batches failed, no further batches are send in this case
+   */
+  public BulkLoadStatistics loadEntries(Iterator<Map.Entry<K, V>> entries) {
+    final BulkLoadStatistics stats = new BulkLoadStatistics();
+    final Semaphore inFlight = new Semaphore(maxBatchesInFlight);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    try {
+      Map<K, V> batch = new HashMap<>(batchSize * 4 / 3 + 1);
+      while (entries.hasNext() && failure.get() == null) {
+        Map.Entry<K, V> entry = entries.next();
+        batch.put(entry.getKey(), entry.getValue());
+        if (batch.size() >= batchSize) {
+          send(batch, inFlight, failure, stats);
+          batch = new HashMap<>(batchSize * 4 / 3 + 1);
+        }
+      }
+      if (!batch.isEmpty() && failure.get() == null) {
+        send(batch, inFlight, failure, stats);
+      }
+      // wait until all batches in flight are completed
+      inFlight.acquire(maxBatchesInFlight);
+      inFlight.release(maxBatchesInFlight);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Bulk load interrupted after " + stats.getEntries() + " entries", e);
+    }
+    stats.finish();
+
+    if (failure.get() != null) {
+      throw new IllegalStateException("Bulk load failed after " + stats.getEntries() + " entries", failure.get());
+    }
+    return stats;
+  }
+
+  private void send(Map<K, V> batch, Semaphore inFlight, AtomicReference<Throwable> failure, BulkLoadStatistics stats) throws InterruptedException {
+    // backpressure, block until one of the batches in flight is completed
+    inFlight.acquire();
+    final long start = System.nanoTime();
+    final int size = batch.size();
+    try {
+      cache.putAllAsync(batch).whenComplete((v, t) -> {
+        if (t != null) {
+          failure.compareAndSet(null, t);
+        } else {
+          stats.batchCompleted(size, System.nanoTime() - start);
+        }
+        inFlight.release();
+      });
+    } catch (RuntimeException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+}
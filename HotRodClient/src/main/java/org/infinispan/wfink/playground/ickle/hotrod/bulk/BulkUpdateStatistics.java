@@ -0,0 +1,166 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and conflict rate of a bulk update. A conflict is a replace which failed because the entry was changed by another client after it was read, the entry is read and updated again until the number of retries is exhausted.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class BulkUpdateStatistics {
+  private final long startNanos = System.nanoTime();
+  private long endNanos;
+  private long entries;
+  private long updated;
+  private long unchanged;
+  private long missing;
+  private long conflicts;
+  private long failed;
+  private long batches;
+
+  synchronized void batchCompleted(Batch batch) {
+    batches++;
+    entries += batch.entries;
+    updated += batch.updated;
+    unchanged += batch.unchanged;
+    missing += batch.missing;
+    conflicts += batch.conflicts;
+    failed += batch.failed;
+  }
+
+  synchronized void finish() {
+    endNanos = System.nanoTime();
+  }
+
+  public synchronized long getEntries() {
+    return entries;
+  }
+
+  public synchronized long getUpdated() {
+    return updated;
+  }
+
+  /**
+   * @return the number of entries which need no change
+   */
+  public synchronized long getUnchanged() {
+    return unchanged;
+  }
+
+  /**
+   * @return the number of entries which were removed before they are read
+   */
+  public synchronized long getMissing() {
+    return missing;
+  }
+
+  public synchronized long getConflicts() {
+    return conflicts;
+  }
+
+  /**
+   * @return the number of entries which are not updated because each retry ended with a conflict
+   */
+  public synchronized long getFailed() {
+    return failed;
+  }
+
+  public synchronized long getBatches() {
+    return batches;
+  }
+
+  public synchronized long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos);
+  }
+
+  /**
+   * @return entries per second
+   */
+  public synchronized double getThroughput() {
+    long elapsed = (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+    return elapsed == 0 ? 0 : entries * 1_000_000_000d / elapsed;
+  }
+
+  /**
+   * @return the conflicts in percent of all replace attempts
+   */
+  public synchronized double getConflictRate() {
+    return conflictRate(updated, conflicts);
+  }
+
+  private static double conflictRate(long updated, long conflicts) {
+    // each update and each conflict is one replace, the last conflict of a failed entry as well
+    long replaces = updated + conflicts;
+    return replaces == 0 ? 0 : conflicts * 100d / replaces;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("BulkUpdateStatistics [entries=%d, updated=%d, unchanged=%d, missing=%d, failed=%d, batches=%d, elapsed=%dms, throughput=%.1f/s, conflicts=%d (%.2f%%)]", entries, updated, unchanged, missing, failed, batches, getElapsedMillis(), getThroughput(), conflicts,
+        getConflictRate());
+  }
+
+  /**
+   * The result of one batch, the time is measured from reading the first entry until the last entry is replaced.
+   */
+  public static class Batch {
+    private final int number;
+    private final int entries;
+    private final int updated;
+    private final int unchanged;
+    private final int missing;
+    private final int conflicts;
+    private final int failed;
+    private final long nanos;
+
+    Batch(int number, int entries, int updated, int unchanged, int missing, int conflicts, int failed, long nanos) {
+      this.number = number;
+      this.entries = entries;
+      this.updated = updated;
+      this.unchanged = unchanged;
+      this.missing = missing;
+      this.conflicts = conflicts;
+      this.failed = failed;
+      this.nanos = nanos;
+    }
+
+    public int getNumber() {
+      return number;
+    }
+
+    public int getEntries() {
+      return entries;
+    }
+
+    public int getUpdated() {
+      return updated;
+    }
+
+    public int getConflicts() {
+      return conflicts;
+    }
+
+    public double getMillis() {
+      return nanos / 1_000_000d;
+    }
+
+    /**
+     * @return entries per second
+     */
+    public double getThroughput() {
+      return nanos == 0 ? 0 : entries * 1_000_000_000d / nanos;
+    }
+
+    /**
+     * @return the conflicts in percent of all replace attempts of the batch
+     */
+    public double getConflictRate() {
+      return conflictRate(updated, conflicts);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Batch %d [entries=%d, updated=%d, unchanged=%d, missing=%d, failed=%d, time=%.2fms, throughput=%.1f/s, conflicts=%d (%.2f%%)]", number, entries, updated, unchanged, missing, failed, getMillis(), getThroughput(), conflicts, getConflictRate());
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.query.dsl.Query;
+import org.infinispan.wfink.playground.ickle.hotrod.query.PagedQuery;
+
+/**
+ * Apply a change to many entries of a remote cache without losing concurrent updates of other clients. Each entry is read with its version by getWithMetadataAsync and written back with replaceWithVersionAsync, if the entry was changed meanwhile the replace fails and the entry is read and
+ * changed again.
+ *
+ * The keys are processed in batches, all entries of a batch are read and replaced asynchronous and the number of batches in flight is bounded as for the BulkLoader. The keys can be given directly or as result of an Ickle query, e.g. the ids of all unread messages of a reader.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class BulkUpdater<K, V> {
+  private final RemoteCache<K, V> cache;
+  private final int batchSize;
+  private final int maxBatchesInFlight;
+  private final int maxRetries;
+  private Consumer<BulkUpdateStatistics.Batch> batchReport = b -> {
+  };
+
+  /**
+   * @param cache the cache to update
+   * @param batchSize number of entries which are updated concurrently by one batch
+   * @param maxBatchesInFlight number of batches which can be send without waiting for the completion
+   * @param maxRetries number of times an entry is read and changed again after a conflict
+   */
+  public BulkUpdater(RemoteCache<K, V> cache, int batchSize, int maxBatchesInFlight, int maxRetries) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be positive : " + batchSize);
+    }
+    if (maxBatchesInFlight < 1) {
+      throw new IllegalArgumentException("maxBatchesInFlight must be positive : " + maxBatchesInFlight);
+    }
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("maxRetries must not be negative : " + maxRetries);
+    }
+    this.cache = cache;
+    this.batchSize = batchSize;
+    this.maxBatchesInFlight = maxBatchesInFlight;
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * @param batchReport called with the result of each batch, by the thread which completes the batch
+   */
+  public BulkUpdater<K, V> withBatchReport(Consumer<BulkUpdateStatistics.Batch> batchReport) {
+    this.batchReport = batchReport;
+    return this;
+  }
+
+  /**
+   * Update all entries which match the query. The query should select only the fields which are needed to build the key and is read page by page with search-after, so it must be restricted and ordered by
+   * a unique int id with the parameter lastId, e.g. <code>select m.id from playground.Message m where m.read = false and m.id > :lastId order by m.id</code>. A page has the size of a batch and is fetched
+   * by the calling thread while the previous batches are in flight, the result is never held in memory completely.
+   *
+   * @param idOf read the id from a result of the query
+   * @param keyOf build the key from a result of the query
+   * @param mutation see {@link #update(Iterator, Function)}
+   */
+  public <R> BulkUpdateStatistics update(Query<R> query, ToIntFunction<R> idOf, Function<R, K> keyOf, Function<V, V> mutation) {
+    try (CloseableIterator<R> results = PagedQuery.searchAfter(query, idOf, batchSize, Runnable::run)) {
+      return update(new Iterator<K>() {
+        @Override
+        public boolean hasNext() {
+          return results.hasNext();
+        }
+
+        @Override
+        public K next() {
+          return keyOf.apply(results.next());
+        }
+      }, mutation);
+    }
+  }
+
+  /**
+   * Update the entries of the given keys.
+   *
+   * @param mutation see {@link #update(Iterator, Function)}
+   */
+  public BulkUpdateStatistics update(Collection<K> keys, Function<V, V> mutation) {
+    return update(keys.iterator(), mutation);
+  }
+
+  /**
+   * Update the entries of the given keys. The method will return if all batches are completed.
+   *
+   * @param mutation change the value read from the cache and return it, or return null if the value need no change. The mutation is applied again to the new value after a conflict, so it must not change anything else than the given value.
+   * @return the statistics of the update
+   * @throws IllegalStateException if one of the batches failed, no further batches are send in this case
+   */
+  public BulkUpdateStatistics update(Iterator<K> keys, Function<V, V> mutation) {
+    final BulkUpdateStatistics stats = new BulkUpdateStatistics();
+    final Semaphore inFlight = new Semaphore(maxBatchesInFlight);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    try {
+      int number = 0;
+      List<K> batch = new ArrayList<>(batchSize);
+      while (keys.hasNext() && failure.get() == null) {
+        batch.add(keys.next());
+        if (batch.size() >= batchSize) {
+          send(++number, batch, mutation, inFlight, failure, stats);
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+      if (!batch.isEmpty() && failure.get() == null) {
+        send(++number, batch, mutation, inFlight, failure, stats);
+      }
+      // wait until all batches in flight are completed
+      inFlight.acquire(maxBatchesInFlight);
+      inFlight.release(maxBatchesInFlight);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Bulk update interrupted after " + stats.getEntries() + " entries", e);
+    }
+    stats.finish();
+
+    if (failure.get() != null) {
+      throw new IllegalStateException("Bulk update failed after " + stats.getEntries() + " entries", failure.get());
+    }
+    return stats;
+  }
+
+  private void send(int number, List<K> batch, Function<V, V> mutation, Semaphore inFlight, AtomicReference<Throwable> failure, BulkUpdateStatistics stats) throws InterruptedException {
+    // backpressure, block until one of the batches in flight is completed
+    inFlight.acquire();
+    final long start = System.nanoTime();
+    final BatchCounters counters = new BatchCounters();
+    try {
+      CompletableFuture<?>[] updates = new CompletableFuture<?>[batch.size()];
+      for (int i = 0; i < updates.length; i++) {
+        updates[i] = update(batch.get(i), mutation, 0, counters);
+      }
+      CompletableFuture.allOf(updates).whenComplete((v, t) -> {
+        if (t != null) {
+          failure.compareAndSet(null, t);
+        } else {
+          BulkUpdateStatistics.Batch result = counters.toBatch(number, batch.size(), System.nanoTime() - start);
+          stats.batchCompleted(result);
+          batchReport.accept(result);
+        }
+        inFlight.release();
+      });
+    } catch (RuntimeException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Read the entry with its version and replace it if the version is unchanged, otherwise repeat until the retries are exhausted.
+   */
+  private CompletableFuture<Void> update(K key, Function<V, V> mutation, int retry, BatchCounters counters) {
+    return cache.getWithMetadataAsync(key).thenCompose(current -> {
+      if (current == null) {
+        counters.missing.incrementAndGet();
+        return CompletableFuture.completedFuture(null);
+      }
+      V changed = mutation.apply(current.getValue());
+      if (changed == null) {
+        counters.unchanged.incrementAndGet();
+        return CompletableFuture.completedFuture(null);
+      }
+      return cache.replaceWithVersionAsync(key, changed, current.getVersion()).thenCompose(replaced -> {
+        if (replaced) {
+          counters.updated.incrementAndGet();
+          return CompletableFuture.completedFuture(null);
+        }
+        counters.conflicts.incrementAndGet();
+        if (retry >= maxRetries) {
+          counters.failed.incrementAndGet();
+          return CompletableFuture.completedFuture(null);
+        }
+        return update(key, mutation, retry + 1, counters);
+      });
+    });
+  }
+
+  private static class BatchCounters {
+    final AtomicInteger updated = new AtomicInteger();
+    final AtomicInteger unchanged = new AtomicInteger();
+    final AtomicInteger missing = new AtomicInteger();
+    final AtomicInteger conflicts = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+
+    BulkUpdateStatistics.Batch toBatch(int number, int entries, long nanos) {
+      return new BulkUpdateStatistics.Batch(number, entries, updated.get(), unchanged.get(), missing.get(), conflicts.get(), failed.get(), nanos);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.commons.util.CloseableIterator;
+
+/**
+ * Export all entries of a remote cache to a sink. The entries are streamed from the server in batches with retrieveEntries instead of reading the keySet and calling get() for each key, which needs one round trip per entry.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class CacheExporter<K, V> {
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private final RemoteCache<K, V> cache;
+  private final int batchSize;
+
+  public CacheExporter(RemoteCache<K, V> cache) {
+    this(cache, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param cache the cache to export
+   * @param batchSize number of entries transferred from the server with one request
+   */
+  public CacheExporter(RemoteCache<K, V> cache, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be positive : " + batchSize);
+    }
+    this.cache = cache;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Stream all entries of the cache to the sink.
+   *
+   * @return the number of exported entries
+   * @throws IOException if the sink fails, the export is stopped
+   */
+  @SuppressWarnings("unchecked")
+  public long export(ExportSink<K, V> sink) throws IOException {
+    long count = 0;
+    try (CloseableIterator<Map.Entry<Object, Object>> it = cache.retrieveEntries(null, batchSize)) {
+      while (it.hasNext()) {
+        Map.Entry<Object, Object> entry = it.next();
+        sink.accept((K) entry.getKey(), (V) entry.getValue());
+        count++;
+      }
+    }
+    return count;
+  }
+}
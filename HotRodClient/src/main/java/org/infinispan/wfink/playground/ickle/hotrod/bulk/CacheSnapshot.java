@@ -0,0 +1,295 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.infinispan.client.hotrod.DataFormat;
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.commons.dataconversion.MediaType;
+import org.infinispan.commons.marshall.IdentityMarshaller;
+
+/**
+ * Dump the entries of a remote cache to a file and restore them into a cache without creating the entity objects. The cache is accessed with a DataFormat which passes the Protobuf bytes of the keys and values unchanged, so a dump and restore does not depend on the domain classes,
+ * only the schemas must be registered at the server.
+ *
+ * The file starts with a magic number and a version, followed by one length-delimited Protobuf message per entry, <code>message SnapshotEntry { bytes key = 1; bytes value = 2; }</code>, where key and value are the WrappedMessage bytes of the cache. The dump is written by a
+ * ParallelCacheScanner through a FileChannel, the restore maps the file into memory and loads the entries with the BulkLoader.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class CacheSnapshot {
+  private static final int MAGIC = 0x49434B53;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int WRITE_BUFFER_SIZE = 1 << 20;
+  // a region must be smaller than 2GB, an entry which crosses the end of a region is read from the next region
+  private static final long MAP_REGION_SIZE = 256L << 20;
+  private static final int KEY_TAG = 1 << 3 | 2;
+  private static final int VALUE_TAG = 2 << 3 | 2;
+
+  private final RemoteCache<byte[], byte[]> rawCache;
+
+  public CacheSnapshot(RemoteCache<?, ?> cache) {
+    this.rawCache = cache.withDataFormat(DataFormat.builder().keyType(MediaType.APPLICATION_PROTOSTREAM).keyMarshaller(IdentityMarshaller.INSTANCE).valueType(MediaType.APPLICATION_PROTOSTREAM).valueMarshaller(IdentityMarshaller.INSTANCE).build());
+  }
+
+  /**
+   * Write all entries of the cache to the file. The file is written to a temporary file first and moved if the dump is complete, so an existing snapshot is not replaced by an incomplete one.
+   *
+   * @param parallelism number of segment groups which are read at the same time
+   * @param batchSize number of entries transferred from the server with one request
+   * @return the result of the scan
+   * @throws IllegalStateException if a segment can not be read
+   */
+  public ScanResult dump(Path file, int parallelism, int batchSize) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    ScanResult result;
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      SnapshotWriter writer = new SnapshotWriter(channel);
+      // a failed write fails the segment group and the dump is incomplete
+      result = new ParallelCacheScanner<>(rawCache, parallelism, batchSize).scan(writer::write);
+      writer.flush();
+      channel.force(false);
+    }
+    if (!result.isComplete()) {
+      Files.delete(tmp);
+      throw new IllegalStateException("Snapshot of " + rawCache.getName() + " is incomplete, " + result, result.getFailure());
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return result;
+  }
+
+  /**
+   * Load all entries of the file into the cache, existing entries with the same key are replaced.
+   *
+   * @param batchSize number of entries written by one putAllAsync call
+   * @param maxBatchesInFlight number of batches which can be send without waiting for the completion
+   * @return the statistics of the load
+   * @throws IOException if the file is not a snapshot or truncated, the entries before the failure are loaded
+   */
+  public BulkLoadStatistics restore(Path file, int batchSize, int maxBatchesInFlight) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new BulkLoader<>(rawCache, batchSize, maxBatchesInFlight).loadEntries(new SnapshotReader(channel, file));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Collect the entries in a buffer and write it if it is full, the entries are written by the threads of the scanner.
+   */
+  private static class SnapshotWriter {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    SnapshotWriter(FileChannel channel) {
+      this.channel = channel;
+      buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    synchronized void write(byte[] key, byte[] value) {
+      int messageSize = 1 + varintSize(key.length) + key.length + 1 + varintSize(value.length) + value.length;
+      int recordSize = varintSize(messageSize) + messageSize;
+      try {
+        if (buffer.remaining() < recordSize) {
+          flush();
+        }
+        // an entry larger than the buffer is written directly
+        ByteBuffer target = recordSize > buffer.capacity() ? ByteBuffer.allocate(recordSize) : buffer;
+        putVarint(target, messageSize);
+        putVarint(target, KEY_TAG);
+        putVarint(target, key.length);
+        target.put(key);
+        putVarint(target, VALUE_TAG);
+        putVarint(target, value.length);
+        target.put(value);
+        if (target != buffer) {
+          target.flip();
+          writeFully(target);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    synchronized void flush() throws IOException {
+      buffer.flip();
+      writeFully(buffer);
+      buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+      while (source.hasRemaining()) {
+        channel.write(source);
+      }
+    }
+  }
+
+  /**
+   * Read the entries from the file which is mapped region by region. Only the key and value bytes are copied, as the cache needs arrays.
+   */
+  private static class SnapshotReader implements Iterator<Map.Entry<byte[], byte[]>> {
+    private final FileChannel channel;
+    private final Path file;
+    private final long size;
+    private long regionStart;
+    private MappedByteBuffer region;
+
+    SnapshotReader(FileChannel channel, Path file) throws IOException {
+      this.channel = channel;
+      this.file = file;
+      this.size = channel.size();
+      map(0);
+      if (size < HEADER_SIZE || region.getInt() != MAGIC || region.getInt() != VERSION) {
+        throw new IOException("File '" + file + "' is not a cache snapshot");
+      }
+    }
+
+    private void map(long position) throws IOException {
+      regionStart = position;
+      region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_REGION_SIZE, size - position));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return regionStart + region.position() < size;
+    }
+
+    @Override
+    public Map.Entry<byte[], byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int start = region.position();
+      try {
+        return readEntry();
+      } catch (BufferUnderflowException e) {
+        // the entry crosses the end of the region, map the next region starting with the entry
+        long position = regionStart + start;
+        try {
+          map(position);
+        } catch (IOException io) {
+          throw new UncheckedIOException(io);
+        }
+        try {
+          return readEntry();
+        } catch (BufferUnderflowException | IllegalArgumentException truncated) {
+          throw new UncheckedIOException(new IOException("File '" + file + "' is truncated at position " + position));
+        }
+      }
+    }
+
+    private Map.Entry<byte[], byte[]> readEntry() {
+      int messageSize = getVarint(region);
+      if (messageSize > region.remaining()) {
+        throw new BufferUnderflowException();
+      }
+      int end = region.position() + messageSize;
+      byte[] key = null;
+      byte[] value = null;
+      while (region.position() < end) {
+        int tag = getVarint(region);
+        if (tag == KEY_TAG) {
+          key = getBytes(end);
+        } else if (tag == VALUE_TAG) {
+          value = getBytes(end);
+        } else {
+          // unknown fields are skipped to be able to extend the entry message
+          skipField(tag, end);
+        }
+      }
+      if (region.position() != end || key == null || value == null) {
+        throw corrupt(end - messageSize);
+      }
+      return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+
+    private byte[] getBytes(int end) {
+      int length = getVarint(region);
+      if (length < 0 || length > end - region.position()) {
+        throw corrupt(region.position());
+      }
+      byte[] bytes = new byte[length];
+      region.get(bytes);
+      return bytes;
+    }
+
+    /**
+     * Skip the value of a field by the wire type of the tag, the groups of Protobuf 2 are not supported.
+     */
+    private void skipField(int tag, int end) {
+      int length;
+      switch (tag & 7) {
+        case 0:
+          // a varint of up to 10 bytes
+          length = 0;
+          while (region.get() < 0) {
+            if (++length == 10) {
+              throw corrupt(region.position());
+            }
+          }
+          return;
+        case 1:
+          length = 8;
+          break;
+        case 2:
+          length = getVarint(region);
+          break;
+        case 5:
+          length = 4;
+          break;
+        default:
+          throw new UncheckedIOException(new IOException("File '" + file + "' has a field with the unsupported wire type " + (tag & 7) + " at position " + (regionStart + region.position())));
+      }
+      if (length < 0 || length > end - region.position()) {
+        throw corrupt(region.position());
+      }
+      region.position(region.position() + length);
+    }
+
+    private UncheckedIOException corrupt(int position) {
+      return new UncheckedIOException(new IOException("File '" + file + "' has a corrupt entry at position " + (regionStart + position)));
+    }
+  }
+
+  private static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private static void putVarint(ByteBuffer buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static int getVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+}
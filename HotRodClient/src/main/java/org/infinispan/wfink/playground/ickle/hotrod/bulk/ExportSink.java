@@ -0,0 +1,27 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Target for the entries of a {@link CacheExporter}.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@FunctionalInterface
+public interface ExportSink<K, V> {
+
+  void accept(K key, V value) throws IOException;
+
+  /**
+   * A sink which writes one line 'key = value' per entry.
+   */
+  static <K, V> ExportSink<K, V> lines(Writer writer) {
+    return (key, value) -> {
+      writer.write(String.valueOf(key));
+      writer.write(" = ");
+      writer.write(String.valueOf(value));
+      writer.write('\n');
+    };
+  }
+}
@@ -0,0 +1,252 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.infinispan.client.hotrod.CacheTopologyInfo;
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.query.dsl.Query;
+
+/**
+ * Scan all entries of a remote cache in parallel. The segments of the cache are split into groups of segments owned by the same server and each group is read by its own retrieveEntries iterator, so a scan of a cluster reads from all servers at the same time instead of one
+ * connection. A scan can be restricted to some segments, e.g. to repeat the segments which failed.
+ *
+ * With a query the filter is executed by the servers and only the matching entries, or the projection of them, are transferred.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ParallelCacheScanner<K, V> {
+  // more groups than threads to balance groups of different size and to repeat less after a failure
+  private static final int GROUPS_PER_THREAD = 4;
+
+  private final RemoteCache<K, ?> cache;
+  private final Query<V> query;
+  private final int parallelism;
+  private final int batchSize;
+
+  /**
+   * @param cache the cache to scan
+   * @param parallelism number of segment groups which are read at the same time
+   * @param batchSize number of entries transferred from the server with one request
+   */
+  public ParallelCacheScanner(RemoteCache<K, V> cache, int parallelism, int batchSize) {
+    this(cache, null, parallelism, batchSize);
+  }
+
+  private ParallelCacheScanner(RemoteCache<K, ?> cache, Query<V> query, int parallelism, int batchSize) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive : " + parallelism);
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be positive : " + batchSize);
+    }
+    this.cache = cache;
+    this.query = query;
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * A scanner which returns only the entries matching the query. The value is the entity, or an Object[] if the query has a projection.
+   */
+  public <R> ParallelCacheScanner<K, R> filter(Query<R> query) {
+    return new ParallelCacheScanner<>(cache, query, parallelism, batchSize);
+  }
+
+  /**
+   * Scan all segments.
+   *
+   * @see #scan(Set, BiConsumer)
+   */
+  public ScanResult scan(BiConsumer<K, V> consumer) {
+    return scan(null, consumer);
+  }
+
+  /**
+   * Scan the segments and pass all entries to the consumer. The consumer is called concurrently by different threads. If a segment group fails, e.g. by a server failure or an exception of the consumer, the other groups are scanned anyway and the segments of the group are returned
+   * as failed. Scanning them again can deliver entries of these segments a second time.
+   *
+   * @param segments the segments to scan, null for all
+   * @return the result, the method returns when all groups are completed
+   */
+  public ScanResult scan(Set<Integer> segments, BiConsumer<K, V> consumer) {
+    final ScanResult result = new ScanResult();
+    final List<Set<Integer>> groups = groups(segments);
+    final AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, groups.size())), r -> {
+      Thread t = new Thread(r, "ParallelCacheScanner-" + threadNumber.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      for (Set<Integer> group : groups) {
+        executor.execute(() -> scanGroup(group, consumer, result));
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Scan interrupted after " + result.getEntries() + " entries", e);
+    } finally {
+      executor.shutdownNow();
+    }
+    result.finish();
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void scanGroup(Set<Integer> group, BiConsumer<K, V> consumer, ScanResult result) {
+    long count = 0;
+    try (CloseableIterator<Map.Entry<Object, Object>> it = open(group)) {
+      while (it.hasNext()) {
+        Map.Entry<Object, Object> entry = it.next();
+        consumer.accept((K) entry.getKey(), (V) entry.getValue());
+        count++;
+      }
+      result.groupCompleted(group, count);
+    } catch (Exception e) {
+      result.groupFailed(group, count, e);
+    }
+  }
+
+  /**
+   * A stream of all entries, a parallel stream reads the segment groups by the threads of the stream. The stream must be closed to close the iterators of an incomplete scan.
+   */
+  public Stream<Map.Entry<K, V>> stream() {
+    Set<CloseableIterator<?>> open = ConcurrentHashMap.newKeySet();
+    return StreamSupport.stream(new GroupSpliterator(groups(null), open), true).onClose(() -> {
+      for (CloseableIterator<?> it : open) {
+        it.close();
+      }
+    });
+  }
+
+  private CloseableIterator<Map.Entry<Object, Object>> open(Set<Integer> segments) {
+    return query == null ? cache.retrieveEntries(null, segments, batchSize) : cache.retrieveEntriesByQuery(query, segments, batchSize);
+  }
+
+  /**
+   * Split the segments into groups which are owned by the same server. A segment with more owners is assigned to the owner with the fewest segments so far, so each server reads about the same number of segments.
+   */
+  private List<Set<Integer>> groups(Set<Integer> segments) {
+    CacheTopologyInfo topology = cache.getCacheTopologyInfo();
+    Map<Integer, List<SocketAddress>> owners = new HashMap<>();
+    for (Map.Entry<SocketAddress, Set<Integer>> e : topology.getSegmentsPerServer().entrySet()) {
+      for (Integer segment : e.getValue()) {
+        owners.computeIfAbsent(segment, s -> new ArrayList<>()).add(e.getKey());
+      }
+    }
+    if (owners.isEmpty()) {
+      // a local cache has no segments and can only be read by one iterator, getNumSegments() would fail
+      return Collections.singletonList(segments);
+    }
+    Map<SocketAddress, List<Integer>> byServer = new LinkedHashMap<>();
+    Set<Integer> toScan = new TreeSet<>(segments == null ? owners.keySet() : segments);
+    for (Integer segment : toScan) {
+      SocketAddress owner = null;
+      for (SocketAddress candidate : owners.getOrDefault(segment, Collections.emptyList())) {
+        if (owner == null || byServer.getOrDefault(candidate, Collections.emptyList()).size() < byServer.getOrDefault(owner, Collections.emptyList()).size()) {
+          owner = candidate;
+        }
+      }
+      // a segment without a known owner is read from any server
+      byServer.computeIfAbsent(owner, o -> new ArrayList<>()).add(segment);
+    }
+
+    int groupSize = Math.max(1, (toScan.size() + parallelism * GROUPS_PER_THREAD - 1) / (parallelism * GROUPS_PER_THREAD));
+    List<Set<Integer>> groups = new ArrayList<>();
+    for (List<Integer> serverSegments : byServer.values()) {
+      for (int from = 0; from < serverSegments.size(); from += groupSize) {
+        groups.add(new TreeSet<>(serverSegments.subList(from, Math.min(from + groupSize, serverSegments.size()))));
+      }
+    }
+    return groups;
+  }
+
+  @Override
+  public String toString() {
+    return "ParallelCacheScanner [cache=" + cache.getName() + ", parallelism=" + parallelism + ", batchSize=" + batchSize + (query == null ? "" : ", query=" + query.getQueryString()) + "]";
+  }
+
+  /**
+   * Split by segment groups, a group is read by one iterator which is opened when the group is reached.
+   */
+  private class GroupSpliterator implements Spliterator<Map.Entry<K, V>> {
+    private final List<Set<Integer>> groups;
+    private final Set<CloseableIterator<?>> open;
+    private int index;
+    private int end;
+    private CloseableIterator<Map.Entry<Object, Object>> current;
+
+    GroupSpliterator(List<Set<Integer>> groups, Set<CloseableIterator<?>> open) {
+      this(groups, open, 0, groups.size());
+    }
+
+    private GroupSpliterator(List<Set<Integer>> groups, Set<CloseableIterator<?>> open, int index, int end) {
+      this.groups = groups;
+      this.open = open;
+      this.index = index;
+      this.end = end;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+      while (current == null || !current.hasNext()) {
+        if (current != null) {
+          current.close();
+          open.remove(current);
+          current = null;
+        }
+        if (index >= end) {
+          return false;
+        }
+        current = open(groups.get(index++));
+        open.add(current);
+      }
+      action.accept((Map.Entry<K, V>) (Map.Entry<?, ?>) current.next());
+      return true;
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> trySplit() {
+      // a group which is already read can not be split
+      int remaining = current == null ? end - index : 0;
+      if (remaining < 2) {
+        return null;
+      }
+      int mid = index + remaining / 2;
+      GroupSpliterator prefix = new GroupSpliterator(groups, open, index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return NONNULL;
+    }
+  }
+}
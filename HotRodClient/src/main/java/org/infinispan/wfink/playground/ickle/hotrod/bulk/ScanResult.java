@@ -0,0 +1,91 @@
+package org.infinispan.wfink.playground.ickle.hotrod.bulk;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of a scan by the ParallelCacheScanner. If a segment group fails the other groups are scanned anyway, the segments of the failed groups can be scanned again with {@link ParallelCacheScanner#scan(Set, java.util.function.BiConsumer)}.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ScanResult {
+  private final long startNanos = System.nanoTime();
+  private long endNanos;
+  private long entries;
+  private int groups;
+  private final Set<Integer> completedSegments = new TreeSet<>();
+  private final Set<Integer> failedSegments = new TreeSet<>();
+  private Throwable failure;
+
+  synchronized void groupCompleted(Set<Integer> segments, long count) {
+    groups++;
+    entries += count;
+    // null for a cache without segments
+    if (segments != null) {
+      completedSegments.addAll(segments);
+    }
+  }
+
+  synchronized void groupFailed(Set<Integer> segments, long count, Throwable t) {
+    groups++;
+    entries += count;
+    if (segments != null) {
+      failedSegments.addAll(segments);
+    }
+    if (failure == null) {
+      failure = t;
+    }
+  }
+
+  synchronized void finish() {
+    endNanos = System.nanoTime();
+  }
+
+  public synchronized long getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return false if a segment group failed, for a cache without segments there are no failed segments and the complete scan must be repeated
+   */
+  public synchronized boolean isComplete() {
+    return failure == null;
+  }
+
+  public synchronized Set<Integer> getCompletedSegments() {
+    return Collections.unmodifiableSet(new TreeSet<>(completedSegments));
+  }
+
+  /**
+   * @return the segments to scan again, the entries of these segments might be delivered partially
+   */
+  public synchronized Set<Integer> getFailedSegments() {
+    return Collections.unmodifiableSet(new TreeSet<>(failedSegments));
+  }
+
+  /**
+   * @return the first failure or null
+   */
+  public synchronized Throwable getFailure() {
+    return failure;
+  }
+
+  public synchronized long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos);
+  }
+
+  /**
+   * @return entries per second
+   */
+  public synchronized double getThroughput() {
+    long elapsed = (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+    return elapsed == 0 ? 0 : entries * 1_000_000_000d / elapsed;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("ScanResult [entries=%d, groups=%d, segments=%d, failedSegments=%s, elapsed=%dms, throughput=%.1f/s%s]", entries, groups, completedSegments.size(), failedSegments, getElapsedMillis(), getThroughput(), failure == null ? "" : ", failure=" + failure);
+  }
+}
@@ -0,0 +1,239 @@
+package org.infinispan.wfink.playground.ickle.hotrod.chunked;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.CompanyHeader;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.EmployeeChunk;
+
+/**
+ * A Company read from the ChunkedCompanyStore. Only the header is read at first, a chunk of employees is read when one of its employees is accessed. Changes are tracked per chunk, so {@link ChunkedCompanyStore#save(ChunkedCompany)} writes only the changed chunks.
+ *
+ * Removing an employee does not move the following employees to other chunks, the chunk becomes smaller. New employees are added to the last chunk until it is full. Use {@link ChunkedCompanyStore#store(Company)} with {@link #toCompany()} to write all chunks full again.
+ *
+ * The instance is not thread safe.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ChunkedCompany implements Iterable<Employee> {
+  private final ChunkedCompanyStore store;
+  private final CompanyHeader header;
+  private final Map<Integer, EmployeeChunk> chunks = new HashMap<>();
+  private final TreeSet<Integer> dirtyChunks = new TreeSet<>();
+  private boolean headerDirty;
+
+  ChunkedCompany(ChunkedCompanyStore store, CompanyHeader header) {
+    this.store = store;
+    this.header = header;
+  }
+
+  public int getId() {
+    return header.getId();
+  }
+
+  public String getName() {
+    return header.getName();
+  }
+
+  public void setName(String name) {
+    header.setName(name);
+    headerDirty = true;
+  }
+
+  public boolean getIsStockCompany() {
+    return header.getIsStockCompany();
+  }
+
+  public void setIsStockCompany(boolean isStockCompany) {
+    header.setIsStockCompany(isStockCompany);
+    headerDirty = true;
+  }
+
+  public Date getCreated() {
+    return new Date(header.getCreatedMillis());
+  }
+
+  public int getEmployeeCount() {
+    return header.getEmployeeCount();
+  }
+
+  public int getChunkCount() {
+    return header.getChunkCount();
+  }
+
+  public Employee getEmployee(int index) {
+    int[] position = locate(index);
+    return chunk(position[0]).getEmployees().get(position[1]);
+  }
+
+  /**
+   * Replace the employee at the index, only the chunk of the employee is written.
+   *
+   * @return the former employee
+   */
+  public Employee setEmployee(int index, Employee employee) {
+    int[] position = locate(index);
+    Employee previous = chunk(position[0]).getEmployees().set(position[1], employee);
+    dirtyChunks.add(position[0]);
+    return previous;
+  }
+
+  /**
+   * Add the employee to the last chunk, or to a new chunk if the last one is full.
+   */
+  public void addEmployee(Employee employee) {
+    int last = header.getChunkCount() - 1;
+    if (last < 0 || header.getChunkSize(last) >= store.getChunkSize()) {
+      last++;
+      // a new chunk is not read from the cache
+      chunks.put(last, new EmployeeChunk(getId(), last));
+      header.addChunk(0);
+    }
+    chunk(last).getEmployees().add(employee);
+    header.setChunkSize(last, header.getChunkSize(last) + 1);
+    dirtyChunks.add(last);
+    headerDirty = true;
+  }
+
+  /**
+   * Remove the employee at the index, the following employees of the chunk move one position.
+   *
+   * @return the removed employee
+   */
+  public Employee removeEmployee(int index) {
+    int[] position = locate(index);
+    Employee removed = chunk(position[0]).getEmployees().remove(position[1]);
+    header.setChunkSize(position[0], header.getChunkSize(position[0]) - 1);
+    dirtyChunks.add(position[0]);
+    headerDirty = true;
+    return removed;
+  }
+
+  /**
+   * Iterate over all employees, the chunks are read when the iteration reaches them. An iteration which stops early does not read the remaining chunks.
+   */
+  @Override
+  public Iterator<Employee> iterator() {
+    return new Iterator<Employee>() {
+      private int next;
+      private Iterator<Employee> current = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!current.hasNext()) {
+          if (next >= header.getChunkCount()) {
+            return false;
+          }
+          int number = next++;
+          // skip empty chunks without reading them
+          if (header.getChunkSize(number) > 0) {
+            current = chunk(number).getEmployees().iterator();
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public Employee next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return current.next();
+      }
+    };
+  }
+
+  /**
+   * Read all chunks which are not read yet with one getAll and build the complete Company.
+   */
+  public Company toCompany() {
+    List<Integer> missing = new ArrayList<>();
+    for (int number = 0; number < header.getChunkCount(); number++) {
+      if (!chunks.containsKey(number)) {
+        missing.add(number);
+      }
+    }
+    if (!missing.isEmpty()) {
+      chunks.putAll(store.readChunks(getId(), missing));
+    }
+    Company company = new Company(getId(), getName(), getIsStockCompany());
+    company.setCreatedMillis(header.getCreatedMillis());
+    for (int number = 0; number < header.getChunkCount(); number++) {
+      company.getEmployees().addAll(chunk(number).getEmployees());
+    }
+    return company;
+  }
+
+  /**
+   * @return the number of chunks which are read from the cache or added
+   */
+  public int getLoadedChunks() {
+    return chunks.size();
+  }
+
+  /**
+   * @return the number of the chunk and the position within the chunk
+   */
+  private int[] locate(int index) {
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("Index: " + index);
+    }
+    int position = index;
+    int[] sizes = header.getChunkSizes();
+    for (int number = 0; number < sizes.length; number++) {
+      if (position < sizes[number]) {
+        return new int[] { number, position };
+      }
+      position -= sizes[number];
+    }
+    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getEmployeeCount());
+  }
+
+  private EmployeeChunk chunk(int number) {
+    EmployeeChunk chunk = chunks.get(number);
+    if (chunk == null) {
+      chunk = store.readChunk(getId(), number);
+      if (chunk == null) {
+        throw new IllegalStateException("Chunk " + number + " of company " + getId() + " not found, it might be changed concurrently");
+      }
+      chunks.put(number, chunk);
+    }
+    return chunk;
+  }
+
+  CompanyHeader getHeader() {
+    return header;
+  }
+
+  boolean isHeaderDirty() {
+    return headerDirty;
+  }
+
+  Collection<EmployeeChunk> getDirtyChunks() {
+    List<EmployeeChunk> dirty = new ArrayList<>();
+    for (int number : dirtyChunks) {
+      dirty.add(chunks.get(number));
+    }
+    return dirty;
+  }
+
+  void saved() {
+    dirtyChunks.clear();
+    headerDirty = false;
+  }
+
+  @Override
+  public String toString() {
+    return "ChunkedCompany [" + header + ", loadedChunks=" + chunks.size() + ", dirtyChunks=" + dirtyChunks + ", headerDirty=" + headerDirty + "]";
+  }
+}
@@ -0,0 +1,161 @@
+package org.infinispan.wfink.playground.ickle.hotrod.chunked;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.CompanyHeader;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.EmployeeChunk;
+
+/**
+ * Store a Company as a CompanyHeader entry and EmployeeChunk entries with a fixed number of employees, instead of one entry with all employees. A company with many employees is not a single large entry which is completely written, indexed and transferred for each change, a change of
+ * an employee writes only the header and the chunk of the employee.
+ *
+ * The keys of the chunks are derived from the company id, so the header is enough to find the chunks. Reading a company returns a ChunkedCompany which reads the chunks only if the employees are accessed, and writes back only the chunks which are changed. The header and the chunks are
+ * separate entries, they are not updated atomically and concurrent updates of the same company by different clients can overwrite each other.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ChunkedCompanyStore {
+  private final RemoteCache<String, Object> cache;
+  private final int chunkSize;
+
+  private final AtomicLong chunksRead = new AtomicLong();
+  private final AtomicLong chunksWritten = new AtomicLong();
+  private final AtomicLong headersWritten = new AtomicLong();
+
+  /**
+   * @param cache the cache for the header and chunk entries, the company cache can not be used as the keys are Strings
+   * @param chunkSize the maximum number of employees of a chunk
+   */
+  public ChunkedCompanyStore(RemoteCache<String, Object> cache, int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be positive : " + chunkSize);
+    }
+    this.cache = cache;
+    this.chunkSize = chunkSize;
+  }
+
+  public static String headerKey(int companyId) {
+    return companyId + "/header";
+  }
+
+  public static String chunkKey(int companyId, int number) {
+    return companyId + "/" + number;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Write the complete Company, the employees are split into full chunks. Chunks of a former version of the company which are not longer needed are removed.
+   */
+  public void store(Company company) {
+    CompanyHeader previous = (CompanyHeader) cache.get(headerKey(company.getId()));
+    CompanyHeader header = new CompanyHeader(company.getId(), company.getName(), company.getIsStockCompany(), company.getCreatedMillis());
+    Map<String, Object> entries = new HashMap<>();
+    List<Employee> employees = company.getEmployees();
+    for (int from = 0; from < employees.size(); from += chunkSize) {
+      EmployeeChunk chunk = new EmployeeChunk(company.getId(), header.getChunkCount());
+      chunk.getEmployees().addAll(employees.subList(from, Math.min(from + chunkSize, employees.size())));
+      header.addChunk(chunk.getEmployees().size());
+      entries.put(chunkKey(company.getId(), chunk.getNumber()), chunk);
+    }
+    entries.put(headerKey(company.getId()), header);
+    cache.putAll(entries);
+    chunksWritten.addAndGet(entries.size() - 1);
+    headersWritten.incrementAndGet();
+
+    if (previous != null) {
+      for (int number = header.getChunkCount(); number < previous.getChunkCount(); number++) {
+        cache.remove(chunkKey(company.getId(), number));
+      }
+    }
+  }
+
+  /**
+   * Read the header of a company, the employees are read when they are accessed.
+   *
+   * @return the company or null if it does not exist
+   */
+  public ChunkedCompany get(int companyId) {
+    CompanyHeader header = (CompanyHeader) cache.get(headerKey(companyId));
+    return header == null ? null : new ChunkedCompany(this, header);
+  }
+
+  /**
+   * Read the company with all employees.
+   *
+   * @return the company or null if it does not exist
+   */
+  public Company getCompany(int companyId) {
+    ChunkedCompany company = get(companyId);
+    return company == null ? null : company.toCompany();
+  }
+
+  /**
+   * Write the header if it is changed and the changed chunks of the company.
+   *
+   * @return the number of entries written
+   */
+  public int save(ChunkedCompany company) {
+    Map<String, Object> entries = new HashMap<>();
+    for (EmployeeChunk chunk : company.getDirtyChunks()) {
+      entries.put(chunkKey(company.getId(), chunk.getNumber()), chunk);
+    }
+    chunksWritten.addAndGet(entries.size());
+    if (company.isHeaderDirty()) {
+      entries.put(headerKey(company.getId()), company.getHeader());
+      headersWritten.incrementAndGet();
+    }
+    if (!entries.isEmpty()) {
+      cache.putAll(entries);
+    }
+    company.saved();
+    return entries.size();
+  }
+
+  public void remove(int companyId) {
+    CompanyHeader header = (CompanyHeader) cache.remove(headerKey(companyId));
+    if (header != null) {
+      for (int number = 0; number < header.getChunkCount(); number++) {
+        cache.remove(chunkKey(companyId, number));
+      }
+    }
+  }
+
+  EmployeeChunk readChunk(int companyId, int number) {
+    chunksRead.incrementAndGet();
+    return (EmployeeChunk) cache.get(chunkKey(companyId, number));
+  }
+
+  /**
+   * Read the chunks with one getAll.
+   */
+  Map<Integer, EmployeeChunk> readChunks(int companyId, Collection<Integer> numbers) {
+    Set<String> keys = new HashSet<>();
+    for (int number : numbers) {
+      keys.add(chunkKey(companyId, number));
+    }
+    Map<Integer, EmployeeChunk> chunks = new HashMap<>();
+    for (Object value : cache.getAll(keys).values()) {
+      EmployeeChunk chunk = (EmployeeChunk) value;
+      chunks.put(chunk.getNumber(), chunk);
+    }
+    chunksRead.addAndGet(chunks.size());
+    return chunks;
+  }
+
+  @Override
+  public String toString() {
+    return "ChunkedCompanyStore [chunkSize=" + chunkSize + ", headersWritten=" + headersWritten + ", chunksWritten=" + chunksWritten + ", chunksRead=" + chunksRead + "]";
+  }
+}
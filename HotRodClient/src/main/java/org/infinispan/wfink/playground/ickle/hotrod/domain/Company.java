@@ -4,32 +4,53 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import org.infinispan.protostream.annotations.ProtoDoc;
+import org.infinispan.protostream.annotations.ProtoFactory;
+import org.infinispan.protostream.annotations.ProtoField;
+
 /**
- * Cache entry class without annotation. A .proto file need to define the fields and a Marshaller is needed as well. Note that the sequence of fields need to have the correct order in .proto and Marshaller for best performance. A
- * PROTOSTREAM warning will be logged otherwise.
+ * An entity class to be stored in an Infinispan cache for Ickle queries. The annotations are processed at compile time by the protostream annotation processor, see CompanySchema, to generate the schema and a marshaller which reads and writes the fields by number. The field numbers,
+ * names and types are the same as in the former company.proto file to be able to read the existing cache entries.
  *
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
+@ProtoDoc("@Indexed")
 public class Company {
 
   private int id;
   private String name;
   private List<Employee> employees;
-  private Boolean isStockCompany = Boolean.FALSE;
-  private Date created;
+  private boolean isStockCompany;
+  // kept as millis to not create a Date for each entity while unmarshalling
+  private long created;
 
   public Company() {
     employees = new ArrayList<Employee>();
-    created = new Date();
+    created = System.currentTimeMillis();
   }
 
-  public Company(int id, String name, Boolean isStockCompany) {
+  public Company(int id, String name, boolean isStockCompany) {
     this();
     this.id = id;
     this.name = name;
     this.isStockCompany = isStockCompany;
   }
 
+  /**
+   * Constructor used by the generated marshaller, the parameter names must match the annotated properties.
+   */
+  @ProtoFactory
+  Company(int id, String name, boolean isStockCompany, List<Employee> employees, long createdMillis) {
+    this.id = id;
+    this.name = name;
+    this.isStockCompany = isStockCompany;
+    this.employees = employees;
+    this.created = createdMillis;
+  }
+
+  // the defaultValue of required primitive fields is needed by the marshaller generated for the @ProtoFactory
+  @ProtoDoc("@Field(index = Index.NO, store = Store.NO)")
+  @ProtoField(number = 1, required = true, defaultValue = "0")
   public int getId() {
     return id;
   }
@@ -38,6 +59,8 @@ public class Company {
     this.id = id;
   }
 
+  @ProtoDoc("@Field(store = Store.YES)")
+  @ProtoField(number = 2, required = true)
   public String getName() {
     return name;
   }
@@ -46,6 +69,8 @@ public class Company {
     this.name = name;
   }
 
+  @ProtoDoc("@Field(index = Index.YES, store = Store.NO)")
+  @ProtoField(number = 4, name = "employee", collectionImplementation = ArrayList.class)
   public List<Employee> getEmployees() {
     return employees;
   }
@@ -54,24 +79,36 @@ public class Company {
     this.employees = employees;
   }
 
-  public Boolean getIsStockCompany() {
+  @ProtoDoc("@Field")
+  @ProtoField(number = 3, name = "isStockCompany", defaultValue = "false")
+  public boolean getIsStockCompany() {
     return isStockCompany;
   }
 
-  public void setIsStockCompany(Boolean isStockCompany) {
+  public void setIsStockCompany(boolean isStockCompany) {
     this.isStockCompany = isStockCompany;
   }
 
   public Date getCreated() {
-    return created;
+    return new Date(created);
   }
 
   public void setCreated(Date created) {
+    this.created = created.getTime();
+  }
+
+  @ProtoDoc("@Field(index = Index.YES, store = Store.NO)")
+  @ProtoField(number = 5, name = "created", required = true, defaultValue = "0")
+  public long getCreatedMillis() {
+    return created;
+  }
+
+  public void setCreatedMillis(long created) {
     this.created = created;
   }
 
   @Override
   public String toString() {
-    return "Company [id=" + id + ", name=" + name + ", employees=" + employees + ", isStockCompany=" + isStockCompany + ", created=" + created + "]";
+    return "Company [id=" + id + ", name=" + name + ", employees=" + employees + ", isStockCompany=" + isStockCompany + ", created=" + getCreated() + "]";
   }
 }
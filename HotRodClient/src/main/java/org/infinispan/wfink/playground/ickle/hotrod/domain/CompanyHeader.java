@@ -0,0 +1,160 @@
+package org.infinispan.wfink.playground.ickle.hotrod.domain;
+
+import java.util.Arrays;
+
+import org.infinispan.protostream.annotations.ProtoDoc;
+import org.infinispan.protostream.annotations.ProtoFactory;
+import org.infinispan.protostream.annotations.ProtoField;
+
+/**
+ * The fields of a Company without the employees for the chunked storage, see ChunkedCompanyStore. The employees are stored in EmployeeChunk entries, the header keeps the number of employees of each chunk to find an employee by index without reading the chunks. The
+ * numbers are stored as varints in one bytes field, because the generated marshaller of protostream 4.3 reads a repeated int32 field, even into an int[], with an Integer per element.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@ProtoDoc("@Indexed")
+public class CompanyHeader {
+
+  private int id;
+  private String name;
+  private boolean isStockCompany;
+  private long created;
+  private int[] chunkSizes;
+
+  public CompanyHeader(int id, String name, boolean isStockCompany, long createdMillis) {
+    this.id = id;
+    this.name = name;
+    this.isStockCompany = isStockCompany;
+    this.created = createdMillis;
+    this.chunkSizes = new int[0];
+  }
+
+  @ProtoFactory
+  CompanyHeader(int id, String name, boolean isStockCompany, long createdMillis, byte[] encodedChunkSizes) {
+    this(id, name, isStockCompany, createdMillis);
+    this.chunkSizes = decode(encodedChunkSizes);
+  }
+
+  @ProtoDoc("@Field(index = Index.NO, store = Store.NO)")
+  @ProtoField(number = 1, required = true, defaultValue = "0")
+  public int getId() {
+    return id;
+  }
+
+  @ProtoDoc("@Field(store = Store.YES)")
+  @ProtoField(number = 2, required = true)
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  @ProtoDoc("@Field")
+  @ProtoField(number = 3, name = "isStockCompany", defaultValue = "false")
+  public boolean getIsStockCompany() {
+    return isStockCompany;
+  }
+
+  public void setIsStockCompany(boolean isStockCompany) {
+    this.isStockCompany = isStockCompany;
+  }
+
+  @ProtoField(number = 4, name = "created", required = true, defaultValue = "0")
+  public long getCreatedMillis() {
+    return created;
+  }
+
+  /**
+   * The number of employees of each chunk as varints. The former repeated field 5 is not used anymore.
+   */
+  @ProtoField(number = 6, name = "chunkSizes")
+  byte[] getEncodedChunkSizes() {
+    int length = 0;
+    for (int size : chunkSizes) {
+      for (int v = size; (v & ~0x7F) != 0; v >>>= 7) {
+        length++;
+      }
+      length++;
+    }
+    byte[] bytes = new byte[length];
+    int pos = 0;
+    for (int size : chunkSizes) {
+      int v = size;
+      while ((v & ~0x7F) != 0) {
+        bytes[pos++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      bytes[pos++] = (byte) v;
+    }
+    return bytes;
+  }
+
+  private static int[] decode(byte[] bytes) {
+    if (bytes == null) {
+      return new int[0];
+    }
+    int count = 0;
+    for (byte b : bytes) {
+      if (b >= 0) {
+        count++;
+      }
+    }
+    int[] sizes = new int[count];
+    int value = 0;
+    int shift = 0;
+    int number = 0;
+    for (byte b : bytes) {
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        sizes[number++] = value;
+        value = 0;
+        shift = 0;
+      } else {
+        shift += 7;
+      }
+    }
+    return sizes;
+  }
+
+  /**
+   * The number of employees of each chunk, a chunk can be smaller than the chunk size after employees are removed. The array must not be changed, use setChunkSize and addChunk.
+   */
+  public int[] getChunkSizes() {
+    return chunkSizes;
+  }
+
+  public int getChunkCount() {
+    return chunkSizes.length;
+  }
+
+  public int getChunkSize(int number) {
+    return chunkSizes[number];
+  }
+
+  public void setChunkSize(int number, int size) {
+    chunkSizes[number] = size;
+  }
+
+  /**
+   * Add a chunk at the end, the array grows by one as a company has only a few chunks.
+   */
+  public void addChunk(int size) {
+    chunkSizes = Arrays.copyOf(chunkSizes, chunkSizes.length + 1);
+    chunkSizes[chunkSizes.length - 1] = size;
+  }
+
+  public int getEmployeeCount() {
+    int count = 0;
+    for (int size : chunkSizes) {
+      count += size;
+    }
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return "CompanyHeader [id=" + id + ", name=" + name + ", isStockCompany=" + isStockCompany + ", employees=" + getEmployeeCount() + ", chunks=" + chunkSizes.length + "]";
+  }
+}
@@ -0,0 +1,35 @@
+package org.infinispan.wfink.playground.ickle.hotrod.domain;
+
+/**
+ * A read only view of a Company for list views, it is created from a projection query and never stored in the cache. So it does not need a schema or marshaller.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class CompanySummary {
+  private final int id;
+  private final String name;
+  private final boolean isStockCompany;
+
+  public CompanySummary(int id, String name, boolean isStockCompany) {
+    this.id = id;
+    this.name = name;
+    this.isStockCompany = isStockCompany;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean getIsStockCompany() {
+    return isStockCompany;
+  }
+
+  @Override
+  public String toString() {
+    return "CompanySummary [id=" + id + ", name=" + name + ", isStockCompany=" + isStockCompany + "]";
+  }
+}
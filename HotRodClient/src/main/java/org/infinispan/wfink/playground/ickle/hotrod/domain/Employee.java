@@ -1,33 +1,57 @@
 package org.infinispan.wfink.playground.ickle.hotrod.domain;
 
+import org.infinispan.protostream.annotations.ProtoDoc;
+import org.infinispan.protostream.annotations.ProtoFactory;
+import org.infinispan.protostream.annotations.ProtoField;
+
 /**
- * Cache entry class without annotation. A .proto file need to define the fields and a Marshaller is needed as well. Note that the sequence of fields need to have the correct order in .proto and Marshaller for best performance. A PROTOSTREAM warning will be logged otherwise.
+ * An entity class which is embedded in the Company. The annotations are processed at compile time by the protostream annotation processor, see CompanySchema, to generate the schema and a marshaller which reads and writes the fields by number. The field numbers, names and types are the same
+ * as in the former company.proto file to be able to read the existing cache entries.
+ *
+ * The age is optional. It is a primitive int with the default 0 for an unset age, so the generated marshaller decodes it without creating an Integer. As the value is always written, an unset age is stored and indexed as 0, a query or aggregation over the age should
+ * exclude it, e.g. with <code>e.age &gt; 0</code>.
+ *
+ * The companyId is only set for the denormalized entries of the employee cache, see EmployeeIndexListener, it is NO_COMPANY for the employees embedded in the Company. It is a primitive int as well, the embedded employees are written with the default 0.
  *
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
+@ProtoDoc("@Indexed")
 public class Employee {
+  /** the age of an employee without age */
+  public static final int NO_AGE = 0;
+  /** the companyId of an employee embedded in the Company */
+  public static final int NO_COMPANY = 0;
 
   private int id;
   private String name;
   private String email;
-  private Integer age;
+  private int age = NO_AGE;
   private boolean isEngaged = false;
+  private int companyId = NO_COMPANY;
 
   public Employee() {
   }
 
   public Employee(int id, String name, String email) {
-    this(id, name, email, null, true);
+    this(id, name, email, NO_AGE, true);
   }
 
-  public Employee(int id, String name, String email, Integer age, boolean engaged) {
+  public Employee(int id, String name, String email, int age, boolean engaged) {
+    this(id, name, email, age, engaged, NO_COMPANY);
+  }
+
+  @ProtoFactory
+  Employee(int id, String name, String email, int age, boolean engaged, int companyId) {
     this.id = id;
     this.name = name;
     this.email = email;
     this.age = age;
     this.isEngaged = engaged;
+    this.companyId = companyId;
   }
 
+  @ProtoDoc("@Field(index = Index.NO, store = Store.NO)")
+  @ProtoField(number = 1, required = true, defaultValue = "0")
   public int getId() {
     return id;
   }
@@ -36,6 +60,8 @@ public class Employee {
     this.id = id;
   }
 
+  @ProtoDoc("@Field(index = Index.YES, store = Store.YES)")
+  @ProtoField(number = 2, required = true)
   public String getName() {
     return name;
   }
@@ -44,6 +70,8 @@ public class Employee {
     this.name = name;
   }
 
+  @ProtoDoc("@Field")
+  @ProtoField(number = 3)
   public String getEmail() {
     return email;
   }
@@ -52,14 +80,25 @@ public class Employee {
     this.email = email;
   }
 
-  public Integer getAge() {
+  /**
+   * The age is optional, NO_AGE if not set.
+   */
+  @ProtoDoc("@Field(index = Index.YES)")
+  @ProtoField(number = 4, defaultValue = "0")
+  public int getAge() {
     return age;
   }
 
-  public void setAge(Integer age) {
+  public void setAge(int age) {
     this.age = age;
   }
 
+  public boolean hasAge() {
+    return age != NO_AGE;
+  }
+
+  @ProtoDoc("@Field")
+  @ProtoField(number = 5, required = true, defaultValue = "false")
   public boolean isEngaged() {
     return isEngaged;
   }
@@ -68,8 +107,28 @@ public class Employee {
     this.isEngaged = isEngaged;
   }
 
+  /**
+   * The id of the Company of a denormalized employee entry.
+   */
+  @ProtoDoc("@Field(index = Index.YES, store = Store.YES)")
+  @ProtoField(number = 6, defaultValue = "0")
+  public int getCompanyId() {
+    return companyId;
+  }
+
+  public void setCompanyId(int companyId) {
+    this.companyId = companyId;
+  }
+
+  /**
+   * A copy of this Employee with the companyId, this instance is not changed as it might be shared, e.g. by the near cache.
+   */
+  public Employee withCompanyId(int companyId) {
+    return new Employee(id, name, email, age, isEngaged, companyId);
+  }
+
   @Override
   public String toString() {
-    return "Person{" + "id=" + id + ", name='" + name + ", age='" + age + ", engaged='" + isEngaged + ", email=" + email + "]";
+    return "Person{" + "id=" + id + ", name='" + name + ", age='" + (hasAge() ? String.valueOf(age) : "null") + ", engaged='" + isEngaged + ", email=" + email + (companyId == NO_COMPANY ? "" : ", companyId=" + companyId) + "]";
   }
 }
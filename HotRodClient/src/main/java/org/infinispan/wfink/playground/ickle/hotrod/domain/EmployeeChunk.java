@@ -0,0 +1,54 @@
+package org.infinispan.wfink.playground.ickle.hotrod.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.annotations.ProtoDoc;
+import org.infinispan.protostream.annotations.ProtoFactory;
+import org.infinispan.protostream.annotations.ProtoField;
+
+/**
+ * A part of the employees of a Company for the chunked storage, see ChunkedCompanyStore. A change of an employee rewrites and reindexes only the chunk and not all employees of the company.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@ProtoDoc("@Indexed")
+public class EmployeeChunk {
+
+  private int companyId;
+  private int number;
+  private List<Employee> employees;
+
+  public EmployeeChunk(int companyId, int number) {
+    this(companyId, number, new ArrayList<>());
+  }
+
+  @ProtoFactory
+  EmployeeChunk(int companyId, int number, List<Employee> employees) {
+    this.companyId = companyId;
+    this.number = number;
+    this.employees = employees;
+  }
+
+  @ProtoDoc("@Field(index = Index.YES, store = Store.NO)")
+  @ProtoField(number = 1, required = true, defaultValue = "0")
+  public int getCompanyId() {
+    return companyId;
+  }
+
+  @ProtoField(number = 2, required = true, defaultValue = "0")
+  public int getNumber() {
+    return number;
+  }
+
+  @ProtoDoc("@Field(index = Index.YES, store = Store.NO)")
+  @ProtoField(number = 3, name = "employee", collectionImplementation = ArrayList.class)
+  public List<Employee> getEmployees() {
+    return employees;
+  }
+
+  @Override
+  public String toString() {
+    return "EmployeeChunk [companyId=" + companyId + ", number=" + number + ", employees=" + employees.size() + "]";
+  }
+}
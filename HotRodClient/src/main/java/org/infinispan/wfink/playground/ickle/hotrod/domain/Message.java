@@ -4,7 +4,7 @@ import org.infinispan.protostream.annotations.ProtoDoc;
 import org.infinispan.protostream.annotations.ProtoField;
 
 /**
- * An entity class to be stored in an Infinispan cache for Ickle queries. The annotations are processed by ProtoSchemaBuilder to create and register it for Ickle queries and indexing at server side.
+ * An entity class to be stored in an Infinispan cache for Ickle queries. The annotations are processed at compile time by the protostream annotation processor, see MessageSchema, to generate the schema and marshaller which are registered for Ickle queries and indexing at server side.
  *
  * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
  */
@@ -21,6 +21,8 @@ public class Message {
 
   private boolean isRead;
 
+  private long version;
+
   public Message() {
   }
 
@@ -79,6 +81,18 @@ public class Message {
     this.isRead = isRead;
   }
 
+  /**
+   * The version must be increased with each write of the Message, it is used to detect changes without reading the Message, see ResumableContinuousQuery. Every client which writes messages must increase it, e.g. with MessageWriter.
+   */
+  @ProtoField(number = 6, defaultValue = "0")
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
   /**
    * Implement a proper hashCode to not have duplicates
    */
@@ -109,6 +123,6 @@ public class Message {
 
   @Override
   public String toString() {
-    return "Mesage [" + "id=" + id + ", text='" + text + '\'' + ", author=" + author + ", reader=" + reader + ", isRead=" + isRead + ']';
+    return "Mesage [" + "id=" + id + ", text='" + text + '\'' + ", author=" + author + ", reader=" + reader + ", isRead=" + isRead + ", version=" + version + ']';
   }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package org.infinispan.wfink.playground.ickle.hotrod.domain;
+
+/**
+ * The read status of a Message, it is created from a projected continuous query and never stored in the cache. So it does not need a schema or marshaller.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class MessageStatus {
+  private final int id;
+  private final boolean isRead;
+
+  public MessageStatus(int id, boolean isRead) {
+    this.id = id;
+    this.isRead = isRead;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public boolean isRead() {
+    return isRead;
+  }
+
+  @Override
+  public String toString() {
+    return "MessageStatus [id=" + id + ", isRead=" + isRead + "]";
+  }
+}
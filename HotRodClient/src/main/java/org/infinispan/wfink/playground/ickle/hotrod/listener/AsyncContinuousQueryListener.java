@@ -0,0 +1,341 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.ContinuousQueryEvent.Type;
+
+/**
+ * Adapter to decouple a ContinuousQueryListener from the Hot Rod client event thread. The events are put into a bounded queue and dispatched to the delegate by a worker thread, so a slow listener will not stall the event delivery for all other listeners of the connection.
+ *
+ * The events are striped by the key, each stripe has its own queue and worker thread. So events for the same key are delivered in order and different keys can be processed in parallel. If a queue is full the {@link OverflowPolicy} decides what happens.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class AsyncContinuousQueryListener<K, V> implements ContinuousQueryListener<K, V>, AutoCloseable {
+  private static final Logger log = Logger.getLogger(AsyncContinuousQueryListener.class.getName());
+
+  public enum OverflowPolicy {
+    /** block the event thread until there is space in the queue */
+    BLOCK,
+    /** remove the oldest event of the queue, the listener will miss this event */
+    DROP_OLDEST,
+    /** merge the event with a pending one for the same key, block only if there is no pending event for the key and the queue is full */
+    COALESCE_BY_KEY
+  }
+
+  private final ContinuousQueryListener<K, V> delegate;
+  private final OverflowPolicy policy;
+  private final List<Stripe> stripes;
+
+  private final AtomicLong dispatched = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong totalLagNanos = new AtomicLong();
+  private volatile long lastLagNanos;
+  private volatile long maxLagNanos;
+
+  /**
+   * @param delegate the listener which process the events
+   * @param stripes number of queues and worker threads
+   * @param queueCapacity the maximum number of pending events per stripe
+   * @param policy what should happen if a queue is full
+   */
+  public AsyncContinuousQueryListener(ContinuousQueryListener<K, V> delegate, int stripes, int queueCapacity, OverflowPolicy policy) {
+    if (stripes < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException("stripes and queueCapacity must be positive");
+    }
+    this.delegate = delegate;
+    this.policy = policy;
+    this.stripes = new ArrayList<>(stripes);
+    for (int i = 0; i < stripes; i++) {
+      Stripe stripe = new Stripe(queueCapacity);
+      this.stripes.add(stripe);
+      Thread worker = new Thread(stripe, "AsyncCQListener-" + delegate + "-" + i);
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  @Override
+  public void resultJoining(K key, V value) {
+    stripe(key).offer(new ContinuousQueryEvent<>(Type.JOINING, key, value));
+  }
+
+  @Override
+  public void resultUpdated(K key, V value) {
+    stripe(key).offer(new ContinuousQueryEvent<>(Type.UPDATED, key, value));
+  }
+
+  @Override
+  public void resultLeaving(K key) {
+    stripe(key).offer(new ContinuousQueryEvent<>(Type.LEAVING, key, null));
+  }
+
+  private Stripe stripe(K key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return stripes.get((h & Integer.MAX_VALUE) % stripes.size());
+  }
+
+  /**
+   * Stop accepting events, the pending events are still dispatched. Wait up to 10 seconds until all are processed.
+   */
+  @Override
+  public void close() {
+    for (Stripe s : stripes) {
+      s.close();
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    for (Stripe s : stripes) {
+      s.awaitTermination(deadline);
+    }
+  }
+
+  /**
+   * @return the number of pending events of all queues
+   */
+  public int getQueueDepth() {
+    int depth = 0;
+    for (Stripe s : stripes) {
+      depth += s.size();
+    }
+    return depth;
+  }
+
+  public long getDispatched() {
+    return dispatched.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * @return the time in ms between receiving and dispatching the last event
+   */
+  public double getLastLagMillis() {
+    return lastLagNanos / 1_000_000d;
+  }
+
+  public double getMaxLagMillis() {
+    return maxLagNanos / 1_000_000d;
+  }
+
+  public double getAvgLagMillis() {
+    long count = dispatched.get();
+    return count == 0 ? 0 : totalLagNanos.get() / 1_000_000d / count;
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncContinuousQueryListener [delegate=" + delegate + ", policy=" + policy + ", queueDepth=" + getQueueDepth() + ", dispatched=" + dispatched + ", dropped=" + dropped + ", coalesced=" + coalesced
+        + String.format(", lag last/avg/max=%.2f/%.2f/%.2fms]", getLastLagMillis(), getAvgLagMillis(), getMaxLagMillis());
+  }
+
+  private void dispatch(ContinuousQueryEvent<K, V> event) {
+    long lag = System.nanoTime() - event.created;
+    lastLagNanos = lag;
+    if (lag > maxLagNanos) {
+      maxLagNanos = lag;
+    }
+    totalLagNanos.addAndGet(lag);
+    dispatched.incrementAndGet();
+    try {
+      event.deliver(delegate);
+    } catch (Exception e) {
+      // the worker must survive a failing listener
+      log.log(Level.WARNING, "Listener failed for the " + event.type + " event of key " + event.key, e);
+    }
+  }
+
+  /**
+   * A bounded queue with its worker. For COALESCE_BY_KEY the pending events are held in a map by key with insertion order, otherwise in a FIFO queue.
+   */
+  private class Stripe implements Runnable {
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final ArrayDeque<ContinuousQueryEvent<K, V>> queue;
+    private final LinkedHashMap<K, ContinuousQueryEvent<K, V>> pending;
+    private boolean closed;
+    private boolean done;
+
+    Stripe(int capacity) {
+      this.capacity = capacity;
+      if (policy == OverflowPolicy.COALESCE_BY_KEY) {
+        this.queue = null;
+        this.pending = new LinkedHashMap<>();
+      } else {
+        this.queue = new ArrayDeque<>(capacity);
+        this.pending = null;
+      }
+    }
+
+    int size() {
+      lock.lock();
+      try {
+        return queue != null ? queue.size() : pending.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void offer(ContinuousQueryEvent<K, V> event) {
+      lock.lock();
+      try {
+        if (closed) {
+          dropped.incrementAndGet();
+          return;
+        }
+        if (pending != null) {
+          ContinuousQueryEvent<K, V> previous = pending.get(event.key);
+          if (previous != null) {
+            coalesce(previous, event);
+            return;
+          }
+          if (!awaitSpace()) {
+            return;
+          }
+          pending.put(event.key, event);
+        } else {
+          if (policy == OverflowPolicy.DROP_OLDEST && isFull()) {
+            queue.poll();
+            dropped.incrementAndGet();
+          } else if (!awaitSpace()) {
+            return;
+          }
+          queue.add(event);
+        }
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private boolean isFull() {
+      return (queue != null ? queue.size() : pending.size()) >= capacity;
+    }
+
+    /**
+     * Block until there is space in the queue.
+     *
+     * @return false if the listener has been closed while waiting, the event is dropped
+     */
+    private boolean awaitSpace() {
+      boolean interrupted = false;
+      while (isFull() && !closed) {
+        try {
+          notFull.await();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (closed) {
+        dropped.incrementAndGet();
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Merge a new event into the pending one for the same key, the listener will see the combined effect only.
+     */
+    private void coalesce(ContinuousQueryEvent<K, V> previous, ContinuousQueryEvent<K, V> event) {
+      coalesced.incrementAndGet();
+      if (!previous.merge(event)) {
+        pending.remove(event.key);
+      }
+    }
+
+    private ContinuousQueryEvent<K, V> take() throws InterruptedException {
+      lock.lock();
+      try {
+        while ((queue != null ? queue.isEmpty() : pending.isEmpty()) && !closed) {
+          notEmpty.await();
+        }
+        ContinuousQueryEvent<K, V> event;
+        if (queue != null) {
+          event = queue.poll();
+        } else {
+          Iterator<Map.Entry<K, ContinuousQueryEvent<K, V>>> it = pending.entrySet().iterator();
+          event = it.hasNext() ? it.next().getValue() : null;
+          if (event != null) {
+            it.remove();
+          }
+        }
+        if (event != null) {
+          notFull.signal();
+        }
+        return event;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        ContinuousQueryEvent<K, V> event;
+        while ((event = take()) != null) {
+          dispatch(event);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        lock.lock();
+        try {
+          done = true;
+          terminated.signalAll();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+
+    void close() {
+      lock.lock();
+      try {
+        closed = true;
+        notEmpty.signalAll();
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void awaitTermination(long deadline) {
+      lock.lock();
+      try {
+        long remaining;
+        while (!done && (remaining = deadline - System.nanoTime()) > 0) {
+          terminated.awaitNanos(remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.ContinuousQueryEvent.Type;
+
+/**
+ * Adapter which holds back the events for a time window and merges the events for the same key, so rapid changes of an entry, e.g. toggling a Message read and unread, are delivered once with the last value. A join followed by a leave within the window is not delivered at all.
+ *
+ * The window starts with the first event after the previous delivery, so each event is delayed by the window at most. The events are delivered in the order of the first event for each key by a separate thread, not by the Hot Rod client event thread.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class CoalescingContinuousQueryListener<K, V> implements ContinuousQueryListener<K, V>, AutoCloseable {
+  private static final Logger log = Logger.getLogger(CoalescingContinuousQueryListener.class.getName());
+  private final ContinuousQueryListener<K, V> delegate;
+  private final long windowNanos;
+  private final ScheduledExecutorService timer;
+  // held while events are delivered to keep the order if the window is flushed and events are delivered directly after close
+  private final Object deliveryLock = new Object();
+  private LinkedHashMap<K, ContinuousQueryEvent<K, V>> pending = new LinkedHashMap<>();
+  private boolean closed;
+
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong cancelled = new AtomicLong();
+
+  /**
+   * @param delegate the listener which process the merged events
+   * @param window the time to wait for more events of the same key
+   */
+  public CoalescingContinuousQueryListener(ContinuousQueryListener<K, V> delegate, long window, TimeUnit unit) {
+    if (window <= 0) {
+      throw new IllegalArgumentException("window must be positive : " + window);
+    }
+    this.delegate = delegate;
+    this.windowNanos = unit.toNanos(window);
+    this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "CoalescingCQListener-" + delegate);
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  @Override
+  public void resultJoining(K key, V value) {
+    add(new ContinuousQueryEvent<>(Type.JOINING, key, value));
+  }
+
+  @Override
+  public void resultUpdated(K key, V value) {
+    add(new ContinuousQueryEvent<>(Type.UPDATED, key, value));
+  }
+
+  @Override
+  public void resultLeaving(K key) {
+    add(new ContinuousQueryEvent<>(Type.LEAVING, key, null));
+  }
+
+  private void add(ContinuousQueryEvent<K, V> event) {
+    received.incrementAndGet();
+    synchronized (this) {
+      if (!closed) {
+        ContinuousQueryEvent<K, V> previous = pending.get(event.key);
+        if (previous == null) {
+          if (pending.isEmpty()) {
+            timer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+          }
+          pending.put(event.key, event);
+        } else {
+          coalesced.incrementAndGet();
+          if (!previous.merge(event)) {
+            pending.remove(event.key);
+            cancelled.incrementAndGet();
+          }
+        }
+        return;
+      }
+    }
+    // there is no window after close, the event is delivered directly
+    synchronized (deliveryLock) {
+      flush();
+      deliver(event);
+      delivered.incrementAndGet();
+    }
+  }
+
+  /**
+   * Deliver the pending events, new events are collected for the next window meanwhile.
+   */
+  private void flush() {
+    synchronized (deliveryLock) {
+      List<ContinuousQueryEvent<K, V>> events;
+      synchronized (this) {
+        if (pending.isEmpty()) {
+          return;
+        }
+        events = new ArrayList<>(pending.values());
+        pending = new LinkedHashMap<>();
+      }
+      for (ContinuousQueryEvent<K, V> event : events) {
+        deliver(event);
+      }
+      delivered.addAndGet(events.size());
+    }
+  }
+
+  private void deliver(ContinuousQueryEvent<K, V> event) {
+    try {
+      event.deliver(delegate);
+    } catch (Exception e) {
+      // the timer must survive a failing listener
+      log.log(Level.WARNING, "Listener failed for the " + event.type + " event of key " + event.key, e);
+    }
+  }
+
+  /**
+   * Deliver the pending events, later events are delivered directly.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    timer.shutdownNow();
+    flush();
+  }
+
+  public long getReceived() {
+    return received.get();
+  }
+
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  /**
+   * @return the number of events which were merged into a pending event for the same key
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * @return the number of joins which were cancelled by a leave within the window
+   */
+  public long getCancelled() {
+    return cancelled.get();
+  }
+
+  @Override
+  public String toString() {
+    return "CoalescingContinuousQueryListener [delegate=" + delegate + ", windowMs=" + TimeUnit.NANOSECONDS.toMillis(windowNanos) + ", received=" + received + ", delivered=" + delivered + ", coalesced=" + coalesced + ", cancelled=" + cancelled + "]";
+  }
+}
@@ -0,0 +1,62 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+
+/**
+ * A continuous query event which is delivered later to a listener. Events for the same key can be merged, so the listener sees only the combined effect.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+final class ContinuousQueryEvent<K, V> {
+  enum Type {
+    JOINING, UPDATED, LEAVING
+  }
+
+  final long created = System.nanoTime();
+  Type type;
+  final K key;
+  V value;
+
+  ContinuousQueryEvent(Type type, K key, V value) {
+    this.type = type;
+    this.key = key;
+    this.value = value;
+  }
+
+  /**
+   * Merge a later event for the same key into this one.
+   *
+   * @return false if the events cancel each other out and nothing need to be delivered
+   */
+  boolean merge(ContinuousQueryEvent<K, V> event) {
+    if (event.type == Type.LEAVING) {
+      if (type == Type.JOINING) {
+        // joined and left before the listener has seen it
+        return false;
+      }
+      type = Type.LEAVING;
+      value = null;
+    } else {
+      // an update keeps a pending join, a join after a pending leave is an update for the listener
+      if (type == Type.LEAVING) {
+        type = Type.UPDATED;
+      }
+      value = event.value;
+    }
+    return true;
+  }
+
+  void deliver(ContinuousQueryListener<K, V> listener) {
+    switch (type) {
+      case JOINING:
+        listener.resultJoining(key, value);
+        break;
+      case UPDATED:
+        listener.resultUpdated(key, value);
+        break;
+      case LEAVING:
+        listener.resultLeaving(key);
+        break;
+    }
+  }
+}
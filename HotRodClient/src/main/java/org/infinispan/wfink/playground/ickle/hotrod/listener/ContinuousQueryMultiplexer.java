@@ -0,0 +1,413 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.Search;
+import org.infinispan.query.api.continuous.ContinuousQuery;
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.query.dsl.QueryFactory;
+
+/**
+ * Serve many subscribers, e.g. the readers of messages, with a few server side continuous queries instead of one continuous query and client listener per subscriber.
+ *
+ * The subscribers are hashed into a fixed number of shards. A shard has a few continuous queries with a 'field IN (...)' condition for at most 60 subscribers each and routes the events by the field value of the entry to the callback of the subscriber. Changes of the subscribers are collected for a short delay and
+ * applied together by a background thread:
+ * <ul>
+ * <li>new subscribers of a shard get one additional registration for them only, so the server sends the initial result of the new subscribers and not of the whole shard</li>
+ * <li>a removed subscriber is not routed anymore, its registration is removed if it has no other subscribers</li>
+ * <li>if a shard has too many registrations, or too many removed subscribers are still part of a condition, all registrations of the shard are replaced by as few as possible. The new registrations are added and their initial result is received before the old ones are removed, so the
+ * subscribers do not miss events, and the joining events of entries which are already delivered are suppressed</li>
+ * </ul>
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ContinuousQueryMultiplexer<K, V> implements AutoCloseable {
+  private static final Logger log = Logger.getLogger(ContinuousQueryMultiplexer.class.getName());
+  // each value is passed as a named parameter, the Hot Rod listener registration transfers at most 127 filter parameters
+  private static final int MAX_SUBSCRIBERS_PER_REGISTRATION = 60;
+  // registrations for added subscribers before the shard is compacted
+  private static final int MAX_ADDITIONAL_REGISTRATIONS = 8;
+  private static final long INITIAL_RESULT_TIMEOUT_MILLIS = 60000;
+
+  // a ContinuousQuery instance is not thread safe, the registrations are only changed by the registrar thread
+  private final ContinuousQuery<K, V> continuousQuery;
+  private final QueryFactory queryFactory;
+  private final String from;
+  private final String field;
+  private final Function<V, String> routingKey;
+  private final long batchDelayMillis;
+  private final List<Shard> shards;
+  private final ScheduledExecutorService registrar;
+
+  /**
+   * @param cache the cache of the entries
+   * @param from the entity and alias, e.g. "playground.Message m"
+   * @param field the field with alias which is used to route the events, e.g. "m.reader"
+   * @param routingKey function to read the field value from the entry
+   * @param shards number of shards, each has at least one server side continuous query if it has subscribers
+   * @param batchDelay time to collect the changes of the subscribers before the registrations are changed
+   */
+  public ContinuousQueryMultiplexer(RemoteCache<K, V> cache, String from, String field, Function<V, String> routingKey, int shards, long batchDelay, TimeUnit unit) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("shards must be positive : " + shards);
+    }
+    this.continuousQuery = Search.getContinuousQuery(cache);
+    this.queryFactory = Search.getQueryFactory(cache);
+    this.from = from;
+    this.field = field;
+    this.routingKey = routingKey;
+    this.batchDelayMillis = unit.toMillis(batchDelay);
+    this.shards = new ArrayList<>(shards);
+    for (int i = 0; i < shards; i++) {
+      this.shards.add(new Shard());
+    }
+    this.registrar = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "ContinuousQueryMultiplexer-" + cache.getName());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Add the callback for a subscriber. The registration is done by a background thread together with other subscribers, the callback receives the current matching entries as joining events afterwards.
+   *
+   * @return completed when the initial result of the subscriber is delivered
+   * @throws IllegalStateException if the subscriber is already registered
+   */
+  public CompletableFuture<Void> subscribe(String subscriber, ContinuousQueryListener<K, V> callback) {
+    return shard(subscriber).subscribe(subscriber, callback);
+  }
+
+  /**
+   * Remove the callback of the subscriber, no more events are delivered to it after the method returns.
+   *
+   * @return the removed callback or null if the subscriber is not registered
+   */
+  public ContinuousQueryListener<K, V> unsubscribe(String subscriber) {
+    return shard(subscriber).unsubscribe(subscriber);
+  }
+
+  /**
+   * @return whether the subscriber is registered, a subscriber is registered before its initial result is delivered
+   */
+  public boolean isSubscribed(String subscriber) {
+    return shard(subscriber).isSubscribed(subscriber);
+  }
+
+  /**
+   * @return the number of continuous queries registered at the server
+   */
+  public int getRegistrations() {
+    int registrations = 0;
+    for (Shard s : shards) {
+      registrations += s.registrations.size();
+    }
+    return registrations;
+  }
+
+  /**
+   * Remove all registrations, pending subscriptions are cancelled.
+   */
+  @Override
+  public void close() {
+    registrar.shutdownNow();
+    try {
+      registrar.awaitTermination(INITIAL_RESULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Shard s : shards) {
+      s.close();
+    }
+  }
+
+  private Shard shard(String subscriber) {
+    return shards.get((subscriber.hashCode() & Integer.MAX_VALUE) % shards.size());
+  }
+
+  private String query(Collection<String> subscribers, String select) {
+    StringBuilder query = new StringBuilder(select).append("FROM ").append(from).append(" WHERE ").append(field).append(" IN (");
+    for (int i = 0; i < subscribers.size(); i++) {
+      if (i > 0) {
+        query.append(", ");
+      }
+      query.append(":s").append(i);
+    }
+    return query.append(')').toString();
+  }
+
+  private Map<String, Object> params(Collection<String> subscribers) {
+    Map<String, Object> params = new HashMap<>();
+    int i = 0;
+    for (String subscriber : subscribers) {
+      params.put("s" + i++, subscriber);
+    }
+    return params;
+  }
+
+  @Override
+  public String toString() {
+    return "ContinuousQueryMultiplexer [from=" + from + ", field=" + field + ", shards=" + shards.size() + ", registrations=" + getRegistrations() + "]";
+  }
+
+  private static class PendingSubscription<K, V> {
+    private final ContinuousQueryListener<K, V> callback;
+    private final CompletableFuture<Void> registered = new CompletableFuture<>();
+
+    PendingSubscription(ContinuousQueryListener<K, V> callback) {
+      this.callback = callback;
+    }
+  }
+
+  private class Shard {
+    private final Map<String, ContinuousQueryListener<K, V>> subscribers = new ConcurrentHashMap<>();
+    // the registration which delivers the events of a subscriber, only one registration is responsible even if the subscriber is part of the condition of others
+    private final Map<String, ShardListener> owners = new ConcurrentHashMap<>();
+    // the subscriber of all entries which are currently in the result, needed to route the leaving events
+    private final Map<K, String> knownKeys = new ConcurrentHashMap<>();
+    private final List<ShardListener> registrations = new CopyOnWriteArrayList<>();
+    // guarded by the shard
+    private Map<String, PendingSubscription<K, V>> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    synchronized CompletableFuture<Void> subscribe(String subscriber, ContinuousQueryListener<K, V> callback) {
+      if (subscribers.containsKey(subscriber) || pending.containsKey(subscriber)) {
+        throw new IllegalStateException("Subscriber '" + subscriber + "' is already registered");
+      }
+      PendingSubscription<K, V> subscription = new PendingSubscription<>(callback);
+      pending.put(subscriber, subscription);
+      schedule();
+      return subscription.registered;
+    }
+
+    synchronized ContinuousQueryListener<K, V> unsubscribe(String subscriber) {
+      PendingSubscription<K, V> subscription = pending.remove(subscriber);
+      if (subscription != null) {
+        subscription.registered.cancel(false);
+        return subscription.callback;
+      }
+      ContinuousQueryListener<K, V> callback = subscribers.remove(subscriber);
+      if (callback != null) {
+        ShardListener owner = owners.remove(subscriber);
+        if (owner != null) {
+          owner.owned.remove(subscriber);
+        }
+        knownKeys.values().removeIf(subscriber::equals);
+        // remove a registration without subscribers or compact the shard
+        schedule();
+      }
+      return callback;
+    }
+
+    synchronized boolean isSubscribed(String subscriber) {
+      return subscribers.containsKey(subscriber) || pending.containsKey(subscriber);
+    }
+
+    private void schedule() {
+      if (!scheduled && !registrar.isShutdown()) {
+        scheduled = true;
+        registrar.schedule(this::apply, batchDelayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    /**
+     * Apply the collected changes, executed by the registrar thread.
+     */
+    private void apply() {
+      Map<String, PendingSubscription<K, V>> added;
+      synchronized (this) {
+        added = pending;
+        pending = new LinkedHashMap<>();
+        scheduled = false;
+      }
+      for (ShardListener registration : registrations) {
+        if (registration.owned.isEmpty()) {
+          remove(registration);
+        }
+      }
+      int stale = 0;
+      for (ShardListener registration : registrations) {
+        stale += registration.condition.size() - registration.owned.size();
+      }
+      int needed = (subscribers.size() + MAX_SUBSCRIBERS_PER_REGISTRATION - 1) / MAX_SUBSCRIBERS_PER_REGISTRATION;
+      boolean compact = registrations.size() >= needed + MAX_ADDITIONAL_REGISTRATIONS || stale > subscribers.size();
+      if (added.isEmpty() && !compact) {
+        return;
+      }
+
+      Set<String> all = new LinkedHashSet<>(added.keySet());
+      if (compact) {
+        all.addAll(subscribers.keySet());
+      }
+      List<ShardListener> replaced = compact ? new ArrayList<>(registrations) : new ArrayList<>();
+      List<ShardListener> created = new ArrayList<>();
+      List<String> split = new ArrayList<>(all);
+      synchronized (this) {
+        for (int from = 0; from < split.size(); from += MAX_SUBSCRIBERS_PER_REGISTRATION) {
+          ShardListener registration = new ShardListener(new LinkedHashSet<>(split.subList(from, Math.min(from + MAX_SUBSCRIBERS_PER_REGISTRATION, split.size()))));
+          created.add(registration);
+          // the new subscribers are routed by the new registration from the beginning, their initial result is delivered while it is received
+          for (String subscriber : registration.condition) {
+            PendingSubscription<K, V> subscription = added.get(subscriber);
+            if (subscription != null) {
+              subscribers.put(subscriber, subscription.callback);
+              own(subscriber, registration);
+            }
+          }
+        }
+      }
+      try {
+        for (ShardListener registration : created) {
+          continuousQuery.addContinuousQueryListener(query(registration.condition, ""), params(registration.condition), registration);
+          registrations.add(registration);
+        }
+        for (ShardListener registration : created) {
+          registration.initialResult.await(queryFactory, query(registration.condition, "SELECT COUNT(" + field + ") "), params(registration.condition), INITIAL_RESULT_TIMEOUT_MILLIS);
+        }
+      } catch (RuntimeException e) {
+        log.log(Level.WARNING, "Registration of " + all + " failed", e);
+        synchronized (this) {
+          for (String subscriber : added.keySet()) {
+            subscribers.remove(subscriber);
+            owners.remove(subscriber);
+            knownKeys.values().removeIf(subscriber::equals);
+          }
+        }
+        for (ShardListener registration : created) {
+          remove(registration);
+        }
+        for (PendingSubscription<K, V> subscription : added.values()) {
+          subscription.registered.completeExceptionally(e);
+        }
+        return;
+      }
+      if (compact) {
+        synchronized (this) {
+          // the existing subscribers are switched to the new registrations after their initial result is received, joining events of known keys are suppressed
+          for (ShardListener registration : created) {
+            for (String subscriber : registration.condition) {
+              if (owners.containsKey(subscriber)) {
+                own(subscriber, registration);
+              }
+            }
+          }
+        }
+        for (ShardListener old : replaced) {
+          remove(old);
+        }
+      }
+      for (PendingSubscription<K, V> subscription : added.values()) {
+        subscription.registered.complete(null);
+      }
+    }
+
+    private void own(String subscriber, ShardListener registration) {
+      ShardListener previous = owners.put(subscriber, registration);
+      if (previous != null) {
+        previous.owned.remove(subscriber);
+      }
+      registration.owned.add(subscriber);
+    }
+
+    private void remove(ShardListener registration) {
+      registrations.remove(registration);
+      try {
+        continuousQuery.removeContinuousQueryListener(registration);
+      } catch (RuntimeException e) {
+        // the events are not routed anymore, the server removes the listener latest when the connection is closed
+        log.log(Level.WARNING, "Removing the registration of " + registration.condition + " failed", e);
+      }
+    }
+
+    synchronized void close() {
+      for (ShardListener registration : registrations) {
+        remove(registration);
+      }
+      for (PendingSubscription<K, V> subscription : pending.values()) {
+        subscription.registered.cancel(false);
+      }
+      pending.clear();
+      subscribers.clear();
+      owners.clear();
+      knownKeys.clear();
+    }
+
+    /**
+     * Listener for one registration. Events are only delivered for the subscribers the registration is responsible for, events for other subscribers of the condition are delivered by another registration or the subscriber is removed.
+     */
+    private class ShardListener implements ContinuousQueryListener<K, V> {
+      private final Set<String> condition;
+      private final Set<String> owned = ConcurrentHashMap.newKeySet();
+      private final InitialResult initialResult = new InitialResult();
+
+      ShardListener(Set<String> condition) {
+        this.condition = condition;
+      }
+
+      @Override
+      public void resultJoining(K key, V value) {
+        initialResult.joined();
+        String subscriber = routingKey.apply(value);
+        if (owners.get(subscriber) == this) {
+          changed(key, value, subscriber, true);
+        }
+      }
+
+      @Override
+      public void resultUpdated(K key, V value) {
+        String subscriber = routingKey.apply(value);
+        if (owners.get(subscriber) == this) {
+          changed(key, value, subscriber, false);
+        }
+      }
+
+      @Override
+      public void resultLeaving(K key) {
+        String subscriber = knownKeys.get(key);
+        // the entry might have joined another subscriber of a different registration already
+        if (subscriber != null && owners.get(subscriber) == this && knownKeys.remove(key, subscriber)) {
+          deliver(subscriber, l -> l.resultLeaving(key));
+        }
+      }
+
+      private void changed(K key, V value, String subscriber, boolean joining) {
+        String previous = knownKeys.put(key, subscriber);
+        if (previous == null) {
+          deliver(subscriber, l -> l.resultJoining(key, value));
+        } else if (!previous.equals(subscriber)) {
+          // the entry has moved to another subscriber of the same shard
+          deliver(previous, l -> l.resultLeaving(key));
+          deliver(subscriber, l -> l.resultJoining(key, value));
+        } else if (!joining) {
+          deliver(subscriber, l -> l.resultUpdated(key, value));
+        }
+        // a joining event for a known key is the initial result of a replacing registration and is not delivered again
+      }
+
+      private void deliver(String subscriber, Consumer<ContinuousQueryListener<K, V>> event) {
+        ContinuousQueryListener<K, V> callback = subscribers.get(subscriber);
+        if (callback != null) {
+          event.accept(callback);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.Search;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryCreated;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryExpired;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryModified;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryRemoved;
+import org.infinispan.client.hotrod.annotation.ClientListener;
+import org.infinispan.client.hotrod.event.ClientCacheEntryCreatedEvent;
+import org.infinispan.client.hotrod.event.ClientCacheEntryExpiredEvent;
+import org.infinispan.client.hotrod.event.ClientCacheEntryModifiedEvent;
+import org.infinispan.client.hotrod.event.ClientCacheEntryRemovedEvent;
+import org.infinispan.query.dsl.Query;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+
+/**
+ * Keep a cache with one entry per Employee in sync with the company cache. Each entry is a copy of an embedded Employee with the companyId, so a query for the employee cache evaluates the conditions for one Employee and not for the flattened list of all employees of a company.
+ *
+ * The listener receives only the key of the changed Company. The events are processed by a single thread in order to not block the event thread of the client, the Company is read and its employees are written with putAll, employees which are no longer part of the Company are
+ * removed. With includeCurrentState the existing companies are synchronized when the listener is added.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@ClientListener(includeCurrentState = true)
+public class EmployeeIndexListener implements AutoCloseable {
+  private static final Logger log = Logger.getLogger(EmployeeIndexListener.class.getName());
+  private final RemoteCache<Integer, Company> companyCache;
+  private final RemoteCache<String, Employee> employeeCache;
+  private final Query<Object[]> employeesOfCompany;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "EmployeeIndexListener");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private final AtomicLong companiesSynchronized = new AtomicLong();
+  private final AtomicLong employeesWritten = new AtomicLong();
+  private final AtomicLong employeesRemoved = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  public EmployeeIndexListener(RemoteCache<Integer, Company> companyCache, RemoteCache<String, Employee> employeeCache) {
+    this.companyCache = companyCache;
+    this.employeeCache = employeeCache;
+    this.employeesOfCompany = Search.getQueryFactory(employeeCache).create("select e.id from playground.Employee e where e.companyId = :companyId");
+  }
+
+  /**
+   * The key of an Employee in the employee cache.
+   */
+  public static String key(int companyId, int employeeId) {
+    return companyId + "/" + employeeId;
+  }
+
+  /**
+   * Register the listener with the company cache, the existing companies are synchronized.
+   */
+  public void start() {
+    companyCache.addClientListener(this);
+  }
+
+  @ClientCacheEntryCreated
+  public void created(ClientCacheEntryCreatedEvent<Integer> event) {
+    submit(event.getKey());
+  }
+
+  @ClientCacheEntryModified
+  public void modified(ClientCacheEntryModifiedEvent<Integer> event) {
+    submit(event.getKey());
+  }
+
+  @ClientCacheEntryRemoved
+  public void removed(ClientCacheEntryRemovedEvent<Integer> event) {
+    submit(event.getKey());
+  }
+
+  @ClientCacheEntryExpired
+  public void expired(ClientCacheEntryExpiredEvent<Integer> event) {
+    submit(event.getKey());
+  }
+
+  private void submit(Integer companyId) {
+    executor.execute(() -> {
+      try {
+        synchronize(companyId);
+      } catch (Exception e) {
+        failures.incrementAndGet();
+        log.log(Level.WARNING, "Failed to synchronize the employees of company " + companyId, e);
+      }
+    });
+  }
+
+  /**
+   * Write the employees of the current Company and remove the ones which are no longer part of it. The Company is read again, so the result is correct also if events are merged or the event type does not fit.
+   */
+  private void synchronize(Integer companyId) {
+    Company company = companyCache.get(companyId);
+    Map<String, Employee> employees = new HashMap<>();
+    if (company != null) {
+      for (Employee e : company.getEmployees()) {
+        // the Company can be the instance of the near cache which is read by other threads, so it is not changed
+        employees.put(key(companyId, e.getId()), e.withCompanyId(companyId));
+      }
+    }
+    List<Object[]> existing = QueryMetricsRegistry.getDefault().list(employeesOfCompany.setParameter("companyId", companyId));
+    if (!employees.isEmpty()) {
+      employeeCache.putAll(employees);
+      employeesWritten.addAndGet(employees.size());
+    }
+    for (Object[] row : existing) {
+      String key = key(companyId, ((Number) row[0]).intValue());
+      if (!employees.containsKey(key)) {
+        employeeCache.remove(key);
+        employeesRemoved.incrementAndGet();
+      }
+    }
+    companiesSynchronized.incrementAndGet();
+  }
+
+  /**
+   * Wait until the events received so far are processed.
+   */
+  public void flush(long timeout, TimeUnit unit) {
+    try {
+      executor.submit(() -> {
+      }).get(timeout, unit);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      throw new IllegalStateException("EmployeeIndexListener not flushed", e);
+    }
+  }
+
+  /**
+   * Remove the listener, the pending events are still processed.
+   */
+  @Override
+  public void close() {
+    companyCache.removeClientListener(this);
+    executor.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "EmployeeIndexListener [companies=" + companiesSynchronized + ", employeesWritten=" + employeesWritten + ", employeesRemoved=" + employeesRemoved + ", failures=" + failures + "]";
+  }
+}
@@ -0,0 +1,59 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import java.util.Map;
+
+import org.infinispan.query.dsl.Query;
+import org.infinispan.query.dsl.QueryFactory;
+
+/**
+ * Wait until the initial result of a continuous query is received. The Hot Rod client delivers the initial result by another thread after addContinuousQueryListener has returned, so the registration gives no signal when it is complete.
+ *
+ * The number of matching entries is read with a count query after the registration. The initial result is complete if at least this number of joining events is received, entries which join after the registration are delivered as joining events as well and entries which leave are
+ * part of the initial result and the count.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+final class InitialResult {
+  private long joined;
+
+  /**
+   * Called by the listener for each joining event.
+   */
+  synchronized void joined() {
+    joined++;
+    notifyAll();
+  }
+
+  synchronized long getJoined() {
+    return joined;
+  }
+
+  /**
+   * Wait until the number of joining events reaches the current number of entries matching the count query.
+   *
+   * @param countQuery an Ickle query with a single count(...) column and the same condition as the continuous query
+   * @throws IllegalStateException if the events are not received within the timeout
+   */
+  void await(QueryFactory queryFactory, String countQuery, Map<String, Object> params, long timeoutMillis) {
+    Query<Object[]> query = queryFactory.create(countQuery);
+    if (!params.isEmpty()) {
+      query.setParameters(params);
+    }
+    long expected = ((Number) query.execute().list().get(0)[0]).longValue();
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (this) {
+      try {
+        while (joined < expected) {
+          long wait = deadline - System.currentTimeMillis();
+          if (wait <= 0) {
+            throw new IllegalStateException("Initial result of '" + countQuery + "' not received within " + timeoutMillis + "ms, " + joined + " of " + expected + " entries");
+          }
+          wait(wait);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the initial result of '" + countQuery + "'", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.MessageStatus;
+
+/**
+ * Show the number of unread messages of a reader, the listener receives only the id and read status of the messages and not the text.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class MessageStatusListener implements ContinuousQueryListener<String, MessageStatus> {
+  private final String readerName;
+  private final Set<String> unread = ConcurrentHashMap.newKeySet();
+
+  public MessageStatusListener(String readerName) {
+    this.readerName = readerName;
+  }
+
+  @Override
+  public void resultJoining(String key, MessageStatus value) {
+    update(key, value);
+  }
+
+  @Override
+  public void resultUpdated(String key, MessageStatus value) {
+    update(key, value);
+  }
+
+  @Override
+  public void resultLeaving(String key) {
+    if (unread.remove(key)) {
+      print();
+    }
+  }
+
+  private void update(String key, MessageStatus value) {
+    boolean changed = value.isRead() ? unread.remove(key) : unread.add(key);
+    if (changed) {
+      print();
+    }
+  }
+
+  private void print() {
+    System.out.printf("STATUS %s has %d unread messages\n", readerName, unread.size());
+  }
+
+  @Override
+  public String toString() {
+    return "MessageStatusListener [readerName=" + readerName + ", unread=" + unread.size() + "]";
+  }
+}
@@ -0,0 +1,329 @@
+package org.infinispan.wfink.playground.ickle.hotrod.listener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.Search;
+import org.infinispan.query.api.continuous.ContinuousQuery;
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+
+/**
+ * A continuous query which can be resumed after a restart of the client without receiving the complete result again. The keys and versions of the entries the listener has seen are written to a checkpoint file. When the query is started again only the difference to the checkpoint is
+ * delivered, entries which are new as joining, changed entries as updated and entries which are no longer part of the result as leaving events.
+ *
+ * The continuous query at server side selects only the version of the entries, e.g. <code>select m.version from playground.Message m where m.reader = :reader</code>, so the initial result is a list of keys and versions. Only new and changed entries are read with getAll, the values
+ * of later events are read with getAsync. The version must increase with each write of an entry, all writers must use the same rule, e.g. the MessageWriter for the Message entries, otherwise a resumed
+ * reader does not see the change.
+ *
+ * If the read of a value fails it is repeated up to FETCH_RETRIES times. A key which is still not delivered keeps the version seen before in the checkpoint, so the change is delivered by the next event
+ * for the key or by the next start.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ResumableContinuousQuery<K, V> implements AutoCloseable {
+  private static final Logger log = Logger.getLogger(ResumableContinuousQuery.class.getName());
+  private static final int CHECKPOINT_MAGIC = 0x49434B31;
+  private static final int FETCH_BATCH_SIZE = 500;
+  private static final int FETCH_RETRIES = 3;
+  private static final long INITIAL_RESULT_TIMEOUT_MILLIS = 60000;
+  private static final Pattern SELECT_VERSION = Pattern.compile("^\\s*select\\s+(.+?)\\s+from\\s", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+  private final RemoteCache<K, V> cache;
+  private final ContinuousQuery<K, V> continuousQuery;
+  private final String query;
+  private final String countQuery;
+  private final Map<String, Object> params;
+  private final ToLongFunction<V> versionOf;
+  private final Function<String, K> keyParser;
+  private final Path checkpointFile;
+  private final ContinuousQueryListener<K, V> delegate;
+  private final VersionListener listener = new VersionListener();
+
+  // the version of the entries in the result at server side, updated by the events
+  private final Map<K, Long> current = new ConcurrentHashMap<>();
+  // the version of the entries the delegate has seen, this is written to the checkpoint
+  private final Map<K, Long> delivered = new HashMap<>();
+  // held while the delegate is called and the delivered versions are changed
+  private final Object deliveryLock = new Object();
+  // keys of events received during the resynchronization, null after it is finished
+  private Set<K> pendingKeys;
+
+  private final AtomicLong joined = new AtomicLong();
+  private final AtomicLong updated = new AtomicLong();
+  private final AtomicLong left = new AtomicLong();
+  private final AtomicLong fetched = new AtomicLong();
+  private final InitialResult initialResult = new InitialResult();
+  private volatile long resumedFromCheckpoint;
+
+  /**
+   * @param cache the cache of the entries
+   * @param query the Ickle query which select only the version field of the entries
+   * @param params the values of the named parameters of the query
+   * @param versionOf read the version of an entry
+   * @param keyParser convert the key from the String form in the checkpoint file, e.g. Integer::valueOf
+   * @param checkpointFile the file which keeps the keys and versions the delegate has seen
+   * @param delegate the listener for the entries
+   * @throws IllegalArgumentException if the query is not a select of the version field
+   */
+  public ResumableContinuousQuery(RemoteCache<K, V> cache, String query, Map<String, Object> params, ToLongFunction<V> versionOf, Function<String, K> keyParser, Path checkpointFile, ContinuousQueryListener<K, V> delegate) {
+    this.cache = cache;
+    this.continuousQuery = Search.getContinuousQuery(cache);
+    this.query = query;
+    Matcher select = SELECT_VERSION.matcher(query);
+    if (!select.find()) {
+      throw new IllegalArgumentException("Query '" + query + "' does not select the version field");
+    }
+    // the same condition, used to know the size of the initial result
+    this.countQuery = select.replaceFirst("select count($1) from ");
+    this.params = params;
+    this.versionOf = versionOf;
+    this.keyParser = keyParser;
+    this.checkpointFile = checkpointFile;
+    this.delegate = delegate;
+  }
+
+  /**
+   * Load the checkpoint, register the continuous query and deliver the difference between the checkpoint and the current result. Events received meanwhile are delivered afterwards.
+   */
+  public ResumableContinuousQuery<K, V> start() {
+    Map<K, Long> checkpoint = load();
+    resumedFromCheckpoint = checkpoint.size();
+    synchronized (deliveryLock) {
+      delivered.putAll(checkpoint);
+    }
+    synchronized (this) {
+      pendingKeys = new HashSet<>();
+    }
+    continuousQuery.addContinuousQueryListener(query, params, listener);
+    // without the complete initial result the entries of the checkpoint would be seen as leaving
+    initialResult.await(Search.getQueryFactory(cache), countQuery, params, INITIAL_RESULT_TIMEOUT_MILLIS);
+
+    Set<K> keys;
+    synchronized (deliveryLock) {
+      keys = new HashSet<>(delivered.keySet());
+    }
+    keys.addAll(current.keySet());
+    while (true) {
+      reconcile(keys);
+      synchronized (this) {
+        if (pendingKeys.isEmpty()) {
+          pendingKeys = null;
+          return this;
+        }
+        keys = pendingKeys;
+        pendingKeys = new HashSet<>();
+      }
+    }
+  }
+
+  /**
+   * Deliver the changes for the keys where the version the delegate has seen is not the current one.
+   */
+  private void reconcile(Collection<K> keys) {
+    List<K> changed = new ArrayList<>();
+    for (K key : keys) {
+      Long version = current.get(key);
+      Long seen;
+      synchronized (deliveryLock) {
+        seen = delivered.get(key);
+      }
+      if (version == null) {
+        deliver(key, null);
+      } else if (!version.equals(seen)) {
+        changed.add(key);
+      }
+    }
+    for (int from = 0; from < changed.size(); from += FETCH_BATCH_SIZE) {
+      Set<K> batch = new HashSet<>(changed.subList(from, Math.min(from + FETCH_BATCH_SIZE, changed.size())));
+      Map<K, V> values = cache.getAll(batch);
+      fetched.addAndGet(values.size());
+      for (K key : batch) {
+        deliver(key, values.get(key));
+      }
+    }
+  }
+
+  /**
+   * Bring the delegate in line with the current result for one key.
+   *
+   * @param value the value read from the cache, null if it does not exist anymore
+   */
+  private void deliver(K key, V value) {
+    synchronized (deliveryLock) {
+      if (!current.containsKey(key)) {
+        if (delivered.remove(key) != null) {
+          left.incrementAndGet();
+          delegate.resultLeaving(key);
+        }
+      } else if (value != null) {
+        // the value might be newer than the event, a later event for the same version is not delivered again
+        long version = versionOf.applyAsLong(value);
+        Long previous = delivered.get(key);
+        if (previous == null) {
+          delivered.put(key, version);
+          joined.incrementAndGet();
+          delegate.resultJoining(key, value);
+        } else if (previous < version) {
+          // reads for different events can complete out of order, an older value is not delivered
+          delivered.put(key, version);
+          updated.incrementAndGet();
+          delegate.resultUpdated(key, value);
+        }
+      }
+      // an entry which is removed after the event is delivered with the leaving event
+    }
+  }
+
+  /**
+   * Write the keys and versions the delegate has seen. The file is replaced atomically, so a crash while writing keeps the previous checkpoint.
+   */
+  public void checkpoint() {
+    Map<K, Long> snapshot;
+    synchronized (deliveryLock) {
+      snapshot = new HashMap<>(delivered);
+    }
+    Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(CHECKPOINT_MAGIC);
+      out.writeUTF(identity());
+      out.writeInt(snapshot.size());
+      for (Map.Entry<K, Long> e : snapshot.entrySet()) {
+        out.writeUTF(e.getKey().toString());
+        out.writeLong(e.getValue());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Checkpoint '" + checkpointFile + "' can not be written", e);
+    }
+    try {
+      Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new IllegalStateException("Checkpoint '" + checkpointFile + "' can not be written", e);
+    }
+  }
+
+  /**
+   * @return the keys and versions of the checkpoint, empty if there is none or it was written for another query
+   */
+  private Map<K, Long> load() {
+    Map<K, Long> checkpoint = new HashMap<>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+      if (in.readInt() != CHECKPOINT_MAGIC || !identity().equals(in.readUTF())) {
+        System.out.printf("Checkpoint '%s' ignored, it was not written for %s\n", checkpointFile, identity());
+        return checkpoint;
+      }
+      int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        checkpoint.put(keyParser.apply(in.readUTF()), in.readLong());
+      }
+    } catch (NoSuchFileException e) {
+      // first start
+    } catch (IOException e) {
+      throw new IllegalStateException("Checkpoint '" + checkpointFile + "' can not be read", e);
+    }
+    return checkpoint;
+  }
+
+  /**
+   * The query with its parameters, a checkpoint is only valid for the same query.
+   */
+  private String identity() {
+    return query + " " + new TreeMap<>(params);
+  }
+
+  /**
+   * Remove the continuous query and write the checkpoint.
+   */
+  @Override
+  public void close() {
+    continuousQuery.removeContinuousQueryListener(listener);
+    checkpoint();
+  }
+
+  @Override
+  public String toString() {
+    return "ResumableContinuousQuery [checkpoint=" + checkpointFile + ", resumedEntries=" + resumedFromCheckpoint + ", result=" + current.size() + ", joined=" + joined + ", updated=" + updated + ", left=" + left + ", fetched=" + fetched + "]";
+  }
+
+  /**
+   * Receive the keys and versions from the server. During the resynchronization the keys are only collected, later the values are read asynchronous to not block the event thread.
+   */
+  private class VersionListener implements ContinuousQueryListener<K, Object[]> {
+
+    @Override
+    public void resultJoining(K key, Object[] value) {
+      initialResult.joined();
+      changed(key, ((Number) value[0]).longValue());
+    }
+
+    @Override
+    public void resultUpdated(K key, Object[] value) {
+      changed(key, ((Number) value[0]).longValue());
+    }
+
+    @Override
+    public void resultLeaving(K key) {
+      current.remove(key);
+      if (!addPending(key)) {
+        deliver(key, null);
+      }
+    }
+
+    private void changed(K key, long version) {
+      current.put(key, version);
+      if (!addPending(key)) {
+        fetch(key, 0);
+      }
+    }
+
+    private void fetch(K key, int retry) {
+      cache.getAsync(key).whenComplete((value, t) -> {
+        if (t == null) {
+          fetched.incrementAndGet();
+          deliver(key, value);
+        } else if (retry < FETCH_RETRIES) {
+          log.log(Level.WARNING, "Read of " + key + " failed, retry " + (retry + 1) + " of " + FETCH_RETRIES, t);
+          fetch(key, retry + 1);
+        } else {
+          log.log(Level.WARNING, "Read of " + key + " failed, the change is delivered with the next event or start", t);
+        }
+      });
+    }
+
+    /**
+     * @return true if the key is handled by the resynchronization
+     */
+    private boolean addPending(K key) {
+      synchronized (ResumableContinuousQuery.this) {
+        if (pendingKeys != null) {
+          pendingKeys.add(key);
+          return true;
+        }
+        return false;
+      }
+    }
+  }
+}
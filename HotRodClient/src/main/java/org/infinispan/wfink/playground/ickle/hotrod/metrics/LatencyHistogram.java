@@ -0,0 +1,108 @@
+package org.infinispan.wfink.playground.ickle.hotrod.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram for latencies in nanoseconds with the bucket layout of HdrHistogram. Values below 128 have their own bucket, larger values are grouped in buckets of 64 sub-buckets per power of two. So a percentile is reported with a relative error below 1% and the histogram
+ * has a fixed size of about 30KB for the whole range of long values.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF = SUB_BUCKETS / 2;
+  private static final int MAX_SHIFT = 62 - SUB_BUCKET_BITS + 1;
+  private static final int BUCKETS = SUB_BUCKETS + MAX_SHIFT * HALF;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+    int top = (int) (value >>> shift);
+    return SUB_BUCKETS + (shift - 1) * HALF + (top - HALF);
+  }
+
+  /**
+   * @return the middle of the value range of the bucket
+   */
+  static long value(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int j = index - SUB_BUCKETS;
+    int shift = j / HALF + 1;
+    long top = j % HALF + HALF;
+    long low = top << shift;
+    return low + (1L << (shift - 1));
+  }
+
+  /**
+   * @param nanos the latency, negative values are recorded as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  public double getMeanNanos() {
+    long c = count.sum();
+    return c == 0 ? 0 : (double) sum.sum() / c;
+  }
+
+  /**
+   * @param percentile the percentile between 0 and 100, e.g. 99.9
+   * @return the latency which is not exceeded by the given percentage of the recorded values, 0 if nothing is recorded
+   */
+  public long getPercentileNanos(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(value(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Clear all values, values which are recorded concurrently might be lost or counted partially.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+}
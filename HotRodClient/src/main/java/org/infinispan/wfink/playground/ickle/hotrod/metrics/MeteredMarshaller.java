@@ -0,0 +1,85 @@
+package org.infinispan.wfink.playground.ickle.hotrod.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.infinispan.commons.io.ByteBuffer;
+import org.infinispan.commons.marshall.ProtoStreamMarshaller;
+
+/**
+ * The ProtoStreamMarshaller of the clients which counts the objects and bytes of the keys and values written and read by the cache operations. The results of a remote query are decoded inside the client without the marshaller and are not counted.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class MeteredMarshaller extends ProtoStreamMarshaller implements MeteredMarshallerMBean {
+  private final LongAdder objectsWritten = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder objectsRead = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+
+  @Override
+  protected ByteBuffer objectToBuffer(Object o, int estimatedSize) throws IOException {
+    try {
+      ByteBuffer buffer = super.objectToBuffer(o, estimatedSize);
+      objectsWritten.increment();
+      bytesWritten.add(buffer.getLength());
+      return buffer;
+    } catch (IOException | RuntimeException e) {
+      errors.increment();
+      throw e;
+    }
+  }
+
+  @Override
+  public Object objectFromByteBuffer(byte[] buf, int offset, int length) throws IOException, ClassNotFoundException {
+    try {
+      Object o = super.objectFromByteBuffer(buf, offset, length);
+      objectsRead.increment();
+      bytesRead.add(length);
+      return o;
+    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+      errors.increment();
+      throw e;
+    }
+  }
+
+  @Override
+  public long getObjectsWritten() {
+    return objectsWritten.sum();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public long getObjectsRead() {
+    return objectsRead.sum();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  @Override
+  public void reset() {
+    objectsWritten.reset();
+    bytesWritten.reset();
+    objectsRead.reset();
+    bytesRead.reset();
+    errors.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "MeteredMarshaller [objectsWritten=" + objectsWritten + ", bytesWritten=" + bytesWritten + ", objectsRead=" + objectsRead + ", bytesRead=" + bytesRead + ", errors=" + errors + "]";
+  }
+}
@@ -0,0 +1,21 @@
+package org.infinispan.wfink.playground.ickle.hotrod.metrics;
+
+/**
+ * JMX view of the payload which is marshalled by a client.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public interface MeteredMarshallerMBean {
+
+  long getObjectsWritten();
+
+  long getBytesWritten();
+
+  long getObjectsRead();
+
+  long getBytesRead();
+
+  long getErrors();
+
+  void reset();
+}
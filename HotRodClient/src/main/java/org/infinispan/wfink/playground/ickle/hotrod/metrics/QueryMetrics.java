@@ -0,0 +1,86 @@
+package org.infinispan.wfink.playground.ickle.hotrod.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, result and error counters for all executions of one query template.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+  private final String template;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder results = new LongAdder();
+
+  QueryMetrics(String template) {
+    this.template = template;
+  }
+
+  public void record(long nanos, int resultCount) {
+    latency.record(nanos);
+    results.add(resultCount);
+  }
+
+  public void recordError(long nanos) {
+    latency.record(nanos);
+    errors.increment();
+  }
+
+  @Override
+  public String getTemplate() {
+    return template;
+  }
+
+  @Override
+  public long getExecutions() {
+    return latency.getCount();
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  @Override
+  public long getResults() {
+    return results.sum();
+  }
+
+  @Override
+  public double getMeanMillis() {
+    return latency.getMeanNanos() / 1_000_000d;
+  }
+
+  @Override
+  public double getP50Millis() {
+    return latency.getPercentileNanos(50) / 1_000_000d;
+  }
+
+  @Override
+  public double getP99Millis() {
+    return latency.getPercentileNanos(99) / 1_000_000d;
+  }
+
+  @Override
+  public double getP999Millis() {
+    return latency.getPercentileNanos(99.9) / 1_000_000d;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return latency.getMaxNanos() / 1_000_000d;
+  }
+
+  @Override
+  public void reset() {
+    latency.reset();
+    errors.reset();
+    results.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s : executions=%d, errors=%d, results=%d, mean=%.2fms, p50=%.2fms, p99=%.2fms, p999=%.2fms, max=%.2fms", template, getExecutions(), getErrors(), getResults(), getMeanMillis(), getP50Millis(), getP99Millis(), getP999Millis(), getMaxMillis());
+  }
+}
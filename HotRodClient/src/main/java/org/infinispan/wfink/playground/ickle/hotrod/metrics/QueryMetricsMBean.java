@@ -0,0 +1,29 @@
+package org.infinispan.wfink.playground.ickle.hotrod.metrics;
+
+/**
+ * JMX view of the metrics of one query template.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public interface QueryMetricsMBean {
+
+  String getTemplate();
+
+  long getExecutions();
+
+  long getErrors();
+
+  long getResults();
+
+  double getMeanMillis();
+
+  double getP50Millis();
+
+  double getP99Millis();
+
+  double getP999Millis();
+
+  double getMaxMillis();
+
+  void reset();
+}
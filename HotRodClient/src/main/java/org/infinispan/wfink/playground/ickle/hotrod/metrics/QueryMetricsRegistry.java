@@ -0,0 +1,155 @@
+package org.infinispan.wfink.playground.ickle.hotrod.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.infinispan.query.dsl.Query;
+
+/**
+ * Collect the metrics of the Ickle queries per template. The template is the query string with the literals replaced by '?', so queries which differ only by a value are counted together. Each template is registered as MBean
+ * 'org.infinispan.wfink.playground.ickle:type=QueryMetrics,template=...' and the metrics of all templates can be written periodically to the java.util.logging Logger of this class, for the default registry enable it with -Dickle.metrics.logInterval=&lt;seconds&gt;.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class QueryMetricsRegistry {
+  public static final String JMX_DOMAIN = "org.infinispan.wfink.playground.ickle";
+  private static final Logger log = Logger.getLogger(QueryMetricsRegistry.class.getName());
+  /** system property with the interval in seconds to log the metrics of the default registry periodically */
+  public static final String LOG_INTERVAL_PROPERTY = "ickle.metrics.logInterval";
+  private static final QueryMetricsRegistry DEFAULT = new QueryMetricsRegistry();
+
+  static {
+    Long interval = Long.getLong(LOG_INTERVAL_PROPERTY);
+    if (interval != null && interval > 0) {
+      DEFAULT.startLogging(interval, TimeUnit.SECONDS);
+    }
+  }
+
+  private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"");
+  private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w:.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+  private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*(?:\\?|:\\w+)(?:\\s*,\\s*(?:\\?|:\\w+))*\\s*\\)");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private final ConcurrentMap<String, QueryMetrics> templates = new ConcurrentHashMap<>();
+  private ScheduledExecutorService logger;
+
+  private QueryMetricsRegistry() {
+  }
+
+  /**
+   * @return the registry used by the query helpers of this project
+   */
+  public static QueryMetricsRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Replace string and number literals by '?' and lists of an IN condition by a single '?', e.g. "m.reader = 'Gustavo'" and "m.reader = 'Adrian'" have the same template.
+   */
+  public static String normalize(String query) {
+    String template = STRING_LITERAL.matcher(query).replaceAll("?");
+    template = NUMBER_LITERAL.matcher(template).replaceAll("?");
+    template = IN_LIST.matcher(template).replaceAll("in (?)");
+    return WHITESPACE.matcher(template.trim()).replaceAll(" ");
+  }
+
+  /**
+   * @return the metrics for the template of the query, a new template is registered as MBean
+   */
+  public QueryMetrics get(String query) {
+    return templates.computeIfAbsent(normalize(query), t -> {
+      QueryMetrics metrics = new QueryMetrics(t);
+      registerMBean("type=QueryMetrics,template=" + ObjectName.quote(t), metrics);
+      return metrics;
+    });
+  }
+
+  /**
+   * Execute the query and record the latency, the number of results or the failure.
+   */
+  public <T> List<T> list(Query<T> query) {
+    QueryMetrics metrics = get(query.getQueryString());
+    long start = System.nanoTime();
+    try {
+      List<T> result = query.execute().list();
+      metrics.record(System.nanoTime() - start, result.size());
+      return result;
+    } catch (RuntimeException e) {
+      metrics.recordError(System.nanoTime() - start);
+      throw e;
+    }
+  }
+
+  /**
+   * @return the metrics of all templates, the slowest first by p99
+   */
+  public List<QueryMetrics> getAll() {
+    List<QueryMetrics> all = new ArrayList<>(templates.values());
+    all.sort(Comparator.comparingDouble(QueryMetrics::getP99Millis).reversed());
+    return all;
+  }
+
+  /**
+   * Write the metrics of all templates to the log.
+   */
+  public void log() {
+    if (log.isLoggable(Level.INFO) && !templates.isEmpty()) {
+      StringBuilder sb = new StringBuilder("Query metrics :");
+      for (QueryMetrics m : getAll()) {
+        sb.append("\n   ").append(m);
+      }
+      log.info(sb.toString());
+    }
+  }
+
+  /**
+   * Write the metrics periodically to the log until stopLogging is called.
+   */
+  public synchronized void startLogging(long period, TimeUnit unit) {
+    stopLogging();
+    logger = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "QueryMetrics-log");
+      t.setDaemon(true);
+      return t;
+    });
+    logger.scheduleAtFixedRate(this::log, period, period, unit);
+  }
+
+  public synchronized void stopLogging() {
+    if (logger != null) {
+      logger.shutdownNow();
+      logger = null;
+    }
+  }
+
+  /**
+   * Register an MBean in the domain of this project, a failure is logged but does not stop the client.
+   *
+   * @param properties the key properties of the ObjectName, e.g. "type=Marshaller,name=client-1"
+   */
+  public static void registerMBean(String properties, Object mbean) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(JMX_DOMAIN + ":" + properties);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(mbean, name);
+      }
+    } catch (JMException e) {
+      log.log(Level.WARNING, "MBean " + properties + " not registered", e);
+    }
+  }
+}
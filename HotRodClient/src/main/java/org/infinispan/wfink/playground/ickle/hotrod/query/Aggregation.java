@@ -0,0 +1,127 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.infinispan.query.dsl.Query;
+import org.infinispan.query.dsl.QueryFactory;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+
+/**
+ * Build and execute an Ickle aggregation query, e.g. <code>select c.isStockCompany, count(c.id), avg(c.employee.age) from playground.Company c group by c.isStockCompany</code>. The aggregation is done by the server, only one row per group is transferred.
+ *
+ * Each aggregate has a name to read the value from the {@link AggregationResult}. The values are kept as primitive long and double, so the aggregated fields must be numeric.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class Aggregation {
+
+  private enum Function {
+    COUNT, SUM, AVG, MIN, MAX
+  }
+
+  private final String from;
+  private String where;
+  private String groupBy;
+  private final List<String> names = new ArrayList<>();
+  private final List<String> expressions = new ArrayList<>();
+
+  private Aggregation(String from) {
+    this.from = from;
+  }
+
+  /**
+   * @param from the entity and alias, e.g. "playground.Company c"
+   */
+  public static Aggregation from(String from) {
+    return new Aggregation(from);
+  }
+
+  /**
+   * @param condition the condition for the entities to aggregate, may contain named parameters
+   */
+  public Aggregation where(String condition) {
+    this.where = condition;
+    return this;
+  }
+
+  /**
+   * @param field the field with alias to group the result, e.g. "c.isStockCompany"; without a group the result has a single row
+   */
+  public Aggregation groupBy(String field) {
+    this.groupBy = field;
+    return this;
+  }
+
+  public Aggregation count(String name, String field) {
+    return add(name, Function.COUNT, field);
+  }
+
+  public Aggregation sum(String name, String field) {
+    return add(name, Function.SUM, field);
+  }
+
+  public Aggregation avg(String name, String field) {
+    return add(name, Function.AVG, field);
+  }
+
+  public Aggregation min(String name, String field) {
+    return add(name, Function.MIN, field);
+  }
+
+  public Aggregation max(String name, String field) {
+    return add(name, Function.MAX, field);
+  }
+
+  private Aggregation add(String name, Function function, String field) {
+    if (names.contains(name)) {
+      throw new IllegalArgumentException("Duplicate aggregate name : " + name);
+    }
+    names.add(name);
+    expressions.add(function.name().toLowerCase() + "(" + field + ")");
+    return this;
+  }
+
+  /**
+   * @return the Ickle query string
+   */
+  public String toIckle() {
+    if (expressions.isEmpty()) {
+      throw new IllegalStateException("No aggregate function added");
+    }
+    StringBuilder query = new StringBuilder("select ");
+    if (groupBy != null) {
+      query.append(groupBy).append(", ");
+    }
+    query.append(String.join(", ", expressions)).append(" from ").append(from);
+    if (where != null && !where.trim().isEmpty()) {
+      query.append(" where ").append(where);
+    }
+    if (groupBy != null) {
+      query.append(" group by ").append(groupBy);
+    }
+    return query.toString();
+  }
+
+  public AggregationResult execute(QueryFactory qf) {
+    return execute(qf, Collections.emptyMap());
+  }
+
+  /**
+   * Execute the query with the given values for the named parameters of the condition.
+   */
+  public AggregationResult execute(QueryFactory qf, Map<String, Object> params) {
+    Query<Object[]> query = qf.create(toIckle());
+    if (!params.isEmpty()) {
+      query.setParameters(params);
+    }
+    return new AggregationResult(names, groupBy != null, QueryMetricsRegistry.getDefault().list(query));
+  }
+
+  @Override
+  public String toString() {
+    return "Aggregation [" + toIckle() + "]";
+  }
+}
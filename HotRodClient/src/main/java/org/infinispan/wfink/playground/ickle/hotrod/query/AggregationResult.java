@@ -0,0 +1,122 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The rows of an {@link Aggregation}, one {@link Group} for each value of the group field. The aggregated values are converted once to primitive long and double accumulators. An aggregate without a value, e.g. the avg of an empty group, is 0 as long and NaN as double.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class AggregationResult implements Iterable<AggregationResult.Group> {
+  private final Map<String, Integer> index = new LinkedHashMap<>();
+  private final List<Group> groups;
+
+  AggregationResult(List<String> names, boolean grouped, List<Object[]> rows) {
+    for (int i = 0; i < names.size(); i++) {
+      index.put(names.get(i), i);
+    }
+    int offset = grouped ? 1 : 0;
+    List<Group> groups = new ArrayList<>(rows.size());
+    for (Object[] row : rows) {
+      long[] longs = new long[names.size()];
+      double[] doubles = new double[names.size()];
+      for (int i = 0; i < names.size(); i++) {
+        Number value = (Number) row[i + offset];
+        longs[i] = value == null ? 0 : value.longValue();
+        doubles[i] = value == null ? Double.NaN : value.doubleValue();
+      }
+      groups.add(new Group(grouped ? row[0] : null, longs, doubles));
+    }
+    this.groups = Collections.unmodifiableList(groups);
+  }
+
+  public int size() {
+    return groups.size();
+  }
+
+  public List<Group> getGroups() {
+    return groups;
+  }
+
+  /**
+   * @return the group for the value of the group field or null if there is no such group
+   */
+  public Group get(Object key) {
+    for (Group g : groups) {
+      if (Objects.equals(g.key, key)) {
+        return g;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the only row of an aggregation without group by
+   */
+  public Group single() {
+    if (groups.size() != 1) {
+      throw new IllegalStateException("Expected one row but the result has " + groups.size());
+    }
+    return groups.get(0);
+  }
+
+  @Override
+  public Iterator<Group> iterator() {
+    return groups.iterator();
+  }
+
+  @Override
+  public String toString() {
+    return "AggregationResult " + groups;
+  }
+
+  private int column(String name) {
+    Integer i = index.get(name);
+    if (i == null) {
+      throw new IllegalArgumentException("Unknown aggregate '" + name + "', available " + index.keySet());
+    }
+    return i;
+  }
+
+  public final class Group {
+    private final Object key;
+    private final long[] longs;
+    private final double[] doubles;
+
+    private Group(Object key, long[] longs, double[] doubles) {
+      this.key = key;
+      this.longs = longs;
+      this.doubles = doubles;
+    }
+
+    /**
+     * @return the value of the group field, null for an aggregation without group by
+     */
+    public Object getKey() {
+      return key;
+    }
+
+    public long getLong(String name) {
+      return longs[column(name)];
+    }
+
+    public double getDouble(String name) {
+      return doubles[column(name)];
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("Group [key=").append(key);
+      for (Map.Entry<String, Integer> e : index.entrySet()) {
+        sb.append(", ").append(e.getKey()).append('=').append(doubles[e.getValue()]);
+      }
+      return sb.append(']').toString();
+    }
+  }
+}
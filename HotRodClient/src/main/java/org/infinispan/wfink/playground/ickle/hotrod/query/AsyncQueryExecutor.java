@@ -0,0 +1,193 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.query.dsl.QueryFactory;
+
+/**
+ * Execute independent Ickle queries concurrently, so the time for a set of queries is the time of the slowest one instead of the sum. The queries run on a bounded pool, if all threads are busy and the queue is full the caller runs the query itself to slow down the submission. Such a
+ * query is complete before the submit method returns and the timeout is scheduled, so no timeout applies to it.
+ *
+ * Each query has a timeout, after that the future completes with a TimeoutException and the thread of the query is interrupted, the same happens if the returned future is cancelled. The request to the
+ * server is not necessarily stopped by the interrupt, but its result is ignored and forEach does not fetch a further page. The results of different queries can be combined by union or intersection by a
+ * key.
+ *
+ * A Query instance must not be used concurrently, so each thread has its own QueryTemplateRegistry. A template is created once per thread and only the parameters are bound for each execution.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class AsyncQueryExecutor implements AutoCloseable {
+  private static final AtomicInteger POOLS = new AtomicInteger();
+
+  private final ThreadLocal<QueryTemplateRegistry> templates;
+  private final ThreadPoolExecutor executor;
+  private final ScheduledExecutorService timer;
+  private final long timeoutNanos;
+
+  /**
+   * @param queryFactory the query factory of the cache
+   * @param threads the maximum number of concurrent queries
+   * @param queueCapacity the number of queries which can wait for a thread
+   * @param timeout the default timeout for a query
+   */
+  public AsyncQueryExecutor(QueryFactory queryFactory, int threads, int queueCapacity, long timeout, TimeUnit unit) {
+    final int pool = POOLS.incrementAndGet();
+    final AtomicInteger count = new AtomicInteger();
+    // the caller runs a query itself if the queue is full, so it has a registry as well
+    this.templates = ThreadLocal.withInitial(() -> new QueryTemplateRegistry(queryFactory));
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+      Thread t = new Thread(r, "AsyncQuery-" + pool + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "AsyncQuery-" + pool + "-timeout");
+      t.setDaemon(true);
+      return t;
+    });
+    this.timeoutNanos = unit.toNanos(timeout);
+  }
+
+  /**
+   * Execute the query with the default timeout.
+   */
+  public <T> CompletableFuture<List<T>> submit(String query, Map<String, Object> params) {
+    return submit(query, params, timeoutNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Execute the query asynchronous, the complete result is returned as list.
+   *
+   * @param query the Ickle query with named parameters
+   * @param params the values of the named parameters
+   * @param timeout the time until the future completes with a TimeoutException
+   */
+  public <T> CompletableFuture<List<T>> submit(String query, Map<String, Object> params, long timeout, TimeUnit unit) {
+    return execute(query, timeout, unit, result -> result.complete(templates.get().<T> list(query, params)));
+  }
+
+  /**
+   * Execute the query asynchronous and fetch the result page by page, each entry is passed to the action by the thread of the query. The action is not called after a timeout or cancellation.
+   *
+   * @param query the Ickle query with named parameters, it should have an 'order by' to get a stable order of the pages
+   * @param params the values of the named parameters
+   * @param pageSize the number of entries fetched with one request
+   * @param action called for each entry of the result
+   * @return the number of entries
+   */
+  public <T> CompletableFuture<Long> forEach(String query, Map<String, Object> params, int pageSize, Consumer<? super T> action) {
+    return execute(query, timeoutNanos, TimeUnit.NANOSECONDS, result -> {
+      long count = 0;
+      // the pages are fetched by this thread, a prefetch would use the Query of this thread after a timeout or cancellation
+      try (CloseableIterator<T> entries = PagedQuery.iterator(templates.get().<T> query(query, params), pageSize, Runnable::run)) {
+        while (!result.isDone() && entries.hasNext()) {
+          action.accept(entries.next());
+          count++;
+        }
+      }
+      result.complete(count);
+    });
+  }
+
+  /**
+   * Run the task on the pool, the task completes the result. A failure of the task completes the result exceptionally. If the task is run by the caller, because the pool is busy, it is complete before
+   * the timeout is scheduled.
+   */
+  private <R> CompletableFuture<R> execute(String query, long timeout, TimeUnit unit, Consumer<CompletableFuture<R>> queryTask) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    Future<?> task = executor.submit(() -> {
+      if (result.isDone()) {
+        // cancelled or timed out while waiting in the queue
+        return;
+      }
+      try {
+        queryTask.accept(result);
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    ScheduledFuture<?> timeoutTask = timer.schedule(() -> {
+      result.completeExceptionally(new TimeoutException("Query not finished after " + unit.toMillis(timeout) + "ms : " + query));
+    }, timeout, unit);
+    result.whenComplete((r, t) -> {
+      timeoutTask.cancel(false);
+      if (t != null) {
+        // interrupt the query if the future is cancelled or timed out
+        task.cancel(true);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Combine the results, an entry is part of the result if it is in one of the results. The first entry for a key wins.
+   */
+  public static <K, T> CompletableFuture<Map<K, T>> union(Function<T, K> key, List<CompletableFuture<List<T>>> results) {
+    return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+      Map<K, T> union = new LinkedHashMap<>();
+      for (CompletableFuture<List<T>> r : results) {
+        for (T t : r.join()) {
+          union.putIfAbsent(key.apply(t), t);
+        }
+      }
+      return union;
+    });
+  }
+
+  /**
+   * Combine the results, an entry is part of the result if its key is in all results. The entries of the first result are returned.
+   */
+  public static <K, T> CompletableFuture<Map<K, T>> intersection(Function<T, K> key, List<CompletableFuture<List<T>>> results) {
+    if (results.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+    return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+      Map<K, T> intersection = new LinkedHashMap<>();
+      for (T t : results.get(0).join()) {
+        intersection.putIfAbsent(key.apply(t), t);
+      }
+      for (CompletableFuture<List<T>> r : results.subList(1, results.size())) {
+        Map<K, T> next = new LinkedHashMap<>();
+        for (T t : r.join()) {
+          K k = key.apply(t);
+          if (intersection.containsKey(k)) {
+            next.put(k, intersection.get(k));
+          }
+        }
+        intersection.keySet().retainAll(next.keySet());
+      }
+      return intersection;
+    });
+  }
+
+  /**
+   * Stop the threads, running queries are interrupted.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    timer.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncQueryExecutor [threads=" + executor.getMaximumPoolSize() + ", active=" + executor.getActiveCount() + ", queued=" + executor.getQueue().size() + ", completed=" + executor.getCompletedTaskCount() + "]";
+  }
+}
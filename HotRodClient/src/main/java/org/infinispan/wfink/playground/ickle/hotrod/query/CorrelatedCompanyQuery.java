@@ -0,0 +1,71 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.Search;
+import org.infinispan.query.dsl.Query;
+import org.infinispan.query.dsl.QueryFactory;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+
+/**
+ * Find companies by conditions for one and the same Employee. A query for <code>c.employee.name = 'x' and c.employee.age &lt; 100</code> at the company cache matches a Company if any employee has the name and any employee is younger, because the embedded list is flattened in the
+ * index. This query evaluates the condition for the denormalized employees, see EmployeeIndexListener, and reads only the matching companies with getAll.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class CorrelatedCompanyQuery {
+  private final RemoteCache<Integer, Company> companyCache;
+  private final QueryFactory employeeQueryFactory;
+
+  public CorrelatedCompanyQuery(RemoteCache<Integer, Company> companyCache, RemoteCache<String, Employee> employeeCache) {
+    this.companyCache = companyCache;
+    this.employeeQueryFactory = Search.getQueryFactory(employeeCache);
+  }
+
+  /**
+   * @param employeeCondition the condition for one Employee with the alias 'e', e.g. "e.name = :name and e.age &lt; :age"
+   * @param params the values for the named parameters
+   * @return the ids of the companies with at least one matching Employee in ascending order
+   */
+  public Set<Integer> findCompanyIds(String employeeCondition, Map<String, Object> params) {
+    Query<Object[]> query = employeeQueryFactory.create("select e.companyId from playground.Employee e where " + employeeCondition);
+    if (!params.isEmpty()) {
+      query.setParameters(params);
+    }
+    Set<Integer> ids = new TreeSet<>();
+    for (Object[] row : QueryMetricsRegistry.getDefault().list(query)) {
+      if (row[0] != null) {
+        ids.add(((Number) row[0]).intValue());
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * @return the companies with at least one Employee which matches the condition, ordered by id
+   */
+  public List<Company> find(String employeeCondition, Map<String, Object> params) {
+    Set<Integer> ids = findCompanyIds(employeeCondition, params);
+    if (ids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Map<Integer, Company> companies = companyCache.getAll(ids);
+    List<Company> result = new ArrayList<>(ids.size());
+    for (Integer id : ids) {
+      // a Company might be removed after the employee cache was read
+      Company c = companies.get(id);
+      if (c != null) {
+        result.add(c);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,115 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.commons.util.Closeables;
+import org.infinispan.query.dsl.Query;
+import org.infinispan.query.dsl.QueryFactory;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+
+/**
+ * Facade to consume a query result lazily instead of using Query.execute().list() which will transfer and hold the complete result in memory.
+ *
+ * There are two variants to fetch the pages. The offset based one uses startOffset and maxResults of the query, the query should have an 'order by' to get a stable order. The search-after variant use the last id of the previous page as a parameter for the next query, this needs an int id
+ * which is unique and avoids that the server needs to skip the offset for each page.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class PagedQuery {
+  public static final int DEFAULT_PAGE_SIZE = 100;
+
+  private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "PagedQuery-prefetch");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private PagedQuery() {
+  }
+
+  /**
+   * Iterate over the query result with offset based paging.
+   */
+  public static <T> CloseableIterator<T> iterator(Query<T> query, int pageSize) {
+    return iterator(query, pageSize, PREFETCH_EXECUTOR);
+  }
+
+  /**
+   * Iterate over the query result with offset based paging. The query instance is modified for each page and must not be used concurrent.
+   */
+  public static <T> CloseableIterator<T> iterator(Query<T> query, int pageSize, Executor executor) {
+    final long startOffset = query.getStartOffset();
+    return new PagedQueryIterator<>(new Supplier<List<T>>() {
+      private long offset = startOffset;
+
+      @Override
+      public List<T> get() {
+        List<T> page = QueryMetricsRegistry.getDefault().list(query.startOffset(offset).maxResults(pageSize));
+        offset += page.size();
+        return page;
+      }
+    }, pageSize, executor);
+  }
+
+  /**
+   * Iterate over the result of an entity query by using the last id of a page as start for the next one.
+   *
+   * @param qf the query factory for the cache
+   * @param from the entity and alias, e.g. "playground.Company c"
+   * @param where the condition for the query, null or empty to select all entities
+   * @param idField the int id field with alias to order the result, e.g. "c.id"
+   * @param idExtractor function to read the id from the result
+   * @param pageSize number of entries for one page
+   */
+  public static <T> CloseableIterator<T> searchAfter(QueryFactory qf, String from, String where, String idField, ToIntFunction<T> idExtractor, int pageSize) {
+    final String condition = (where == null || where.trim().isEmpty()) ? "" : "(" + where + ") and ";
+    return searchAfter(qf.<T> create("from " + from + " where " + condition + idField + " > :lastId order by " + idField), idExtractor, pageSize, PREFETCH_EXECUTOR);
+  }
+
+  /**
+   * Iterate over the result of a query by using the last id of a page as start for the next one. The query must be restricted and ordered by a unique int id with the parameter lastId, e.g.
+   * <code>select m.id from playground.Message m where m.read = false and m.id > :lastId order by m.id</code>. The query instance is modified for each page and must not be used concurrent.
+   *
+   * @param idExtractor function to read the id from the result
+   * @param executor the executor to prefetch the next page
+   */
+  public static <T> CloseableIterator<T> searchAfter(Query<T> query, ToIntFunction<T> idExtractor, int pageSize, Executor executor) {
+    if (!query.getQueryString().contains(":lastId")) {
+      throw new IllegalArgumentException("The query has no parameter lastId : " + query.getQueryString());
+    }
+    return new PagedQueryIterator<>(new Supplier<List<T>>() {
+      private int lastId = Integer.MIN_VALUE;
+
+      @Override
+      public List<T> get() {
+        List<T> page = QueryMetricsRegistry.getDefault().list(query.setParameter("lastId", lastId).maxResults(pageSize));
+        if (!page.isEmpty()) {
+          lastId = idExtractor.applyAsInt(page.get(page.size() - 1));
+        }
+        return page;
+      }
+    }, pageSize, executor);
+  }
+
+  /**
+   * Sequential stream over the query result with offset based paging, the stream should be closed if it is not fully consumed.
+   */
+  public static <T> Stream<T> stream(Query<T> query, int pageSize) {
+    return stream(iterator(query, pageSize));
+  }
+
+  /**
+   * Sequential stream for one of the iterators, the stream should be closed if it is not fully consumed.
+   */
+  public static <T> Stream<T> stream(CloseableIterator<T> iterator) {
+    return Closeables.stream(iterator, false, Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+  }
+}
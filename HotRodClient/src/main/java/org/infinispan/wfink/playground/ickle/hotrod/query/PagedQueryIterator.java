@@ -0,0 +1,93 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.infinispan.commons.util.CloseableIterator;
+
+/**
+ * Iterator over a query result which is fetched page by page. Only the current page and the next, prefetched, page are held in memory. The next page is requested in the background as soon as the current one is handed over to the caller, so the caller can work on the current page while the
+ * next one is transferred.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class PagedQueryIterator<T> implements CloseableIterator<T> {
+  private final Supplier<List<T>> pageSource;
+  private final int pageSize;
+  private final Executor executor;
+
+  private Iterator<T> current = Collections.emptyIterator();
+  private CompletableFuture<List<T>> next;
+  private boolean closed;
+
+  /**
+   * @param pageSource supplier for the next page, the pages are requested in sequence and never concurrent
+   * @param pageSize the expected size of a page, a smaller page is the last one
+   * @param executor the executor to prefetch the next page
+   */
+  public PagedQueryIterator(Supplier<List<T>> pageSource, int pageSize, Executor executor) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("pageSize must be positive : " + pageSize);
+    }
+    this.pageSource = pageSource;
+    this.pageSize = pageSize;
+    this.executor = executor;
+    this.next = prefetch();
+  }
+
+  private CompletableFuture<List<T>> prefetch() {
+    return CompletableFuture.supplyAsync(pageSource, executor);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      if (next == null || closed) {
+        return false;
+      }
+      List<T> page = await(next);
+      // a page which is not full is the last one, no need for another round trip
+      next = page.size() < pageSize ? null : prefetch();
+      current = page.iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  /**
+   * Stop the iteration, a page which is currently fetched will be discarded.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    current = Collections.emptyIterator();
+    if (next != null) {
+      next.cancel(false);
+      next = null;
+    }
+  }
+
+  private static <T> List<T> await(CompletableFuture<List<T>> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
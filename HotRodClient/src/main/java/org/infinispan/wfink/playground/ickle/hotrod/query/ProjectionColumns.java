@@ -0,0 +1,124 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The result of a projection query stored column by column. Columns of type int, long, double and boolean are kept in primitive arrays, so a large result does not hold a boxed object and an Object[] for each row. A null value of a primitive column is stored as 0 or false.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class ProjectionColumns {
+  private final Class<?>[] types;
+  private final Object[] columns;
+  private int size;
+
+  ProjectionColumns(Class<?>... types) {
+    if (types.length == 0) {
+      throw new IllegalArgumentException("At least one column type is needed");
+    }
+    this.types = types.clone();
+    this.columns = new Object[types.length];
+    for (int i = 0; i < types.length; i++) {
+      columns[i] = newArray(types[i], 16);
+    }
+  }
+
+  private static Object newArray(Class<?> type, int length) {
+    if (type == int.class) {
+      return new int[length];
+    } else if (type == long.class) {
+      return new long[length];
+    } else if (type == double.class) {
+      return new double[length];
+    } else if (type == boolean.class) {
+      return new boolean[length];
+    } else if (type.isPrimitive()) {
+      throw new IllegalArgumentException("Primitive column type not supported : " + type);
+    }
+    return new Object[length];
+  }
+
+  void addAll(Iterator<Object[]> rows) {
+    Row row = new Row();
+    while (rows.hasNext()) {
+      add(row.with(rows.next()));
+    }
+  }
+
+  private void add(Row row) {
+    if (row.size() != types.length) {
+      throw new IllegalStateException("Projection has " + row.size() + " columns but " + types.length + " types are given");
+    }
+    if (size == Array.getLength(columns[0])) {
+      for (int i = 0; i < columns.length; i++) {
+        Object grown = Array.newInstance(columns[i].getClass().getComponentType(), size * 2);
+        System.arraycopy(columns[i], 0, grown, 0, size);
+        columns[i] = grown;
+      }
+    }
+    for (int i = 0; i < types.length; i++) {
+      Class<?> type = types[i];
+      if (type == int.class) {
+        ((int[]) columns[i])[size] = row.getInt(i);
+      } else if (type == long.class) {
+        ((long[]) columns[i])[size] = row.getLong(i);
+      } else if (type == double.class) {
+        ((double[]) columns[i])[size] = row.getDouble(i);
+      } else if (type == boolean.class) {
+        ((boolean[]) columns[i])[size] = row.getBoolean(i);
+      } else {
+        ((Object[]) columns[i])[size] = type.cast(row.get(i));
+      }
+    }
+    size++;
+  }
+
+  /**
+   * @return the number of rows
+   */
+  public int size() {
+    return size;
+  }
+
+  public int columnCount() {
+    return types.length;
+  }
+
+  public int[] getInts(int column) {
+    return Arrays.copyOf((int[]) column(column, int.class), size);
+  }
+
+  public long[] getLongs(int column) {
+    return Arrays.copyOf((long[]) column(column, long.class), size);
+  }
+
+  public double[] getDoubles(int column) {
+    return Arrays.copyOf((double[]) column(column, double.class), size);
+  }
+
+  public boolean[] getBooleans(int column) {
+    return Arrays.copyOf((boolean[]) column(column, boolean.class), size);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T[] getObjects(int column, Class<T> type) {
+    Object[] values = (Object[]) column(column, type);
+    T[] result = (T[]) Array.newInstance(type, size);
+    System.arraycopy(values, 0, result, 0, size);
+    return result;
+  }
+
+  private Object column(int column, Class<?> type) {
+    if (types[column] != type && !(type.isAssignableFrom(types[column]) && !type.isPrimitive())) {
+      throw new IllegalArgumentException("Column " + column + " is of type " + types[column].getName() + " not " + type.getName());
+    }
+    return columns[column];
+  }
+
+  @Override
+  public String toString() {
+    return "ProjectionColumns [types=" + Arrays.toString(types) + ", size=" + size + "]";
+  }
+}
@@ -0,0 +1,55 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import org.infinispan.query.api.continuous.ContinuousQuery;
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.query.dsl.Query;
+
+/**
+ * Typed listener for a continuous query which select only some fields, e.g. <code>select m.id, m.read from playground.Message m where m.reader = :reader</code>. The server sends only the selected fields with each event instead of the complete entity, the rows are converted by a
+ * RowMapper and delivered to a listener for the typed objects.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class ProjectionListener<K, R> implements ContinuousQueryListener<K, Object[]> {
+  private final RowMapper<R> mapper;
+  private final ContinuousQueryListener<K, R> delegate;
+  // the events of one listener are delivered by one event thread, so the Row can be reused
+  private final Row row = new Row();
+
+  private ProjectionListener(RowMapper<R> mapper, ContinuousQueryListener<K, R> delegate) {
+    this.mapper = mapper;
+    this.delegate = delegate;
+  }
+
+  /**
+   * Register the listener for the projection query, the current matching entries are delivered as joining events.
+   *
+   * @return the registered listener which is needed to remove it from the continuous query
+   */
+  public static <K, R> ProjectionListener<K, R> register(ContinuousQuery<K, ?> continuousQuery, Query<Object[]> query, RowMapper<R> mapper, ContinuousQueryListener<K, R> listener) {
+    ProjectionQuery.checkProjection(query);
+    ProjectionListener<K, R> projectionListener = new ProjectionListener<>(mapper, listener);
+    continuousQuery.addContinuousQueryListener(query, projectionListener);
+    return projectionListener;
+  }
+
+  @Override
+  public void resultJoining(K key, Object[] value) {
+    delegate.resultJoining(key, mapper.map(row.with(value)));
+  }
+
+  @Override
+  public void resultUpdated(K key, Object[] value) {
+    delegate.resultUpdated(key, mapper.map(row.with(value)));
+  }
+
+  @Override
+  public void resultLeaving(K key) {
+    delegate.resultLeaving(key);
+  }
+
+  @Override
+  public String toString() {
+    return "ProjectionListener [delegate=" + delegate + "]";
+  }
+}
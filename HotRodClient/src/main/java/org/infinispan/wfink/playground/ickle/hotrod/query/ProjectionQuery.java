@@ -0,0 +1,67 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.query.dsl.Query;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+
+/**
+ * Helper for reporting queries which select only some fields, e.g. <code>select c.id, c.name from playground.Company c</code>. Only the selected fields are transferred and the entities with their embedded Employee list are not unmarshalled at the client. The rows are converted by a
+ * RowMapper to typed objects or collected into primitive column arrays instead of handling the Object[] of the query result with casts.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class ProjectionQuery {
+  private static final Pattern SELECT = Pattern.compile("^\\s*select\\s", Pattern.CASE_INSENSITIVE);
+
+  private ProjectionQuery() {
+  }
+
+  /**
+   * Execute the query and convert all rows.
+   */
+  public static <R> List<R> list(Query<Object[]> query, RowMapper<R> mapper) {
+    checkProjection(query);
+    List<Object[]> rows = QueryMetricsRegistry.getDefault().list(query);
+    List<R> result = new ArrayList<>(rows.size());
+    Row row = new Row();
+    for (Object[] values : rows) {
+      result.add(mapper.map(row.with(values)));
+    }
+    return result;
+  }
+
+  /**
+   * Sequential stream of the converted rows, the result is fetched page by page. The query should have an 'order by' to get a stable order and the stream should be closed if it is not fully consumed.
+   */
+  public static <R> Stream<R> stream(Query<Object[]> query, RowMapper<R> mapper, int pageSize) {
+    checkProjection(query);
+    Row row = new Row();
+    return PagedQuery.stream(query, pageSize).map(values -> mapper.map(row.with(values)));
+  }
+
+  /**
+   * Collect the result page by page into column arrays, one type for each selected field. Use int.class, long.class, double.class or boolean.class for primitive arrays and the class of the value for all other fields.
+   */
+  public static ProjectionColumns columns(Query<Object[]> query, int pageSize, Class<?>... types) {
+    checkProjection(query);
+    ProjectionColumns columns = new ProjectionColumns(types);
+    try (CloseableIterator<Object[]> rows = PagedQuery.iterator(query, pageSize)) {
+      columns.addAll(rows);
+    }
+    return columns;
+  }
+
+  /**
+   * A remote query created from an Ickle string is not parsed at the client, so hasProjections() is only true for queries created by the query builder. Otherwise the query string must start with the select clause, followed by any white space.
+   */
+  static void checkProjection(Query<Object[]> query) {
+    if (!query.hasProjections() && !SELECT.matcher(query.getQueryString()).find()) {
+      throw new IllegalArgumentException("Not a projection query : " + query.getQueryString());
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.Search;
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.query.api.continuous.ContinuousQuery;
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.query.dsl.Query;
+import org.infinispan.query.dsl.QueryFactory;
+
+/**
+ * An opt-in client side cache for the results of Ickle queries. Each cached result is backed by a continuous query with the same condition, the joining, updated and leaving events patch the cached result. So a repeated query is answered from local memory and the result is still current.
+ *
+ * The number of cached queries is bounded, the least recently used one is evicted and its continuous query removed. A result which is not read within the time to live is dropped as well, the expired results are removed with each call to limit the lifetime of continuous queries which are
+ * no longer used. Only queries which can be used as continuous query are possible, that means no projections, no ordering and no full-text conditions. The order of the result is not defined.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class QueryResultCache<K, V> implements AutoCloseable {
+  private static final int SEED_BATCH_SIZE = 500;
+
+  private final RemoteCache<K, V> cache;
+  private final ContinuousQuery<K, V> continuousQuery;
+  private final QueryFactory queryFactory;
+  private final int maxQueries;
+  private final long ttlNanos;
+  private final LinkedHashMap<CacheKey, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+
+  /**
+   * @param cache the cache to query
+   * @param maxQueries maximum number of cached query results
+   * @param ttl time to live of a cached query result after the last read
+   * @param unit time unit of the ttl
+   */
+  public QueryResultCache(RemoteCache<K, V> cache, int maxQueries, long ttl, TimeUnit unit) {
+    if (maxQueries < 1) {
+      throw new IllegalArgumentException("maxQueries must be positive : " + maxQueries);
+    }
+    this.cache = cache;
+    this.continuousQuery = Search.getContinuousQuery(cache);
+    this.queryFactory = Search.getQueryFactory(cache);
+    this.maxQueries = maxQueries;
+    this.ttlNanos = unit.toNanos(ttl);
+  }
+
+  /**
+   * Return the result of the query from the local cache or register a continuous query to build and maintain the result.
+   *
+   * @param query the Ickle query, may contain named parameters
+   * @param params the values for the named parameters
+   */
+  public synchronized List<V> list(String query, Map<String, Object> params) {
+    removeExpired(System.nanoTime());
+    CacheKey key = new CacheKey(query, params);
+    CachedResult result = results.get(key);
+    if (result != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      result = new CachedResult();
+      continuousQuery.addContinuousQueryListener(key.query, key.params, result);
+      try {
+        // the client delivers the initial result of the continuous query after the registration, so the current result is read directly
+        result.seed(key);
+      } catch (RuntimeException e) {
+        continuousQuery.removeContinuousQueryListener(result);
+        throw e;
+      }
+      results.put(key, result);
+      if (results.size() > maxQueries) {
+        remove(results.keySet().iterator().next());
+        evictions.incrementAndGet();
+      }
+    }
+    result.lastAccess = System.nanoTime();
+    return new ArrayList<>(result.entries.values());
+  }
+
+  /**
+   * Remove the results which are not read within the time to live, the results are ordered by the last access.
+   */
+  private void removeExpired(long now) {
+    for (Iterator<CachedResult> it = results.values().iterator(); it.hasNext();) {
+      CachedResult result = it.next();
+      if (now - result.lastAccess <= ttlNanos) {
+        break;
+      }
+      it.remove();
+      continuousQuery.removeContinuousQueryListener(result);
+      expirations.incrementAndGet();
+    }
+  }
+
+  /**
+   * Drop all cached results and remove the continuous queries.
+   */
+  public synchronized void clear() {
+    for (CachedResult result : results.values()) {
+      continuousQuery.removeContinuousQueryListener(result);
+    }
+    results.clear();
+  }
+
+  @Override
+  public void close() {
+    clear();
+  }
+
+  private void remove(CacheKey key) {
+    CachedResult result = results.remove(key);
+    if (result != null) {
+      continuousQuery.removeContinuousQueryListener(result);
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getExpirations() {
+    return expirations.get();
+  }
+
+  public double getHitRate() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  public synchronized int size() {
+    return results.size();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("QueryResultCache [queries=%d, hits=%d, misses=%d, evictions=%d, expirations=%d, hitRate=%.2f]", size(), hits.get(), misses.get(), evictions.get(), expirations.get(), getHitRate());
+  }
+
+  /**
+   * The key of a cached result, the query string is normalized to not cache the same query twice because of different white spaces.
+   */
+  private static class CacheKey {
+    final String query;
+    final Map<String, Object> params;
+
+    CacheKey(String query, Map<String, Object> params) {
+      this.query = query.trim().replaceAll("\\s+", " ");
+      this.params = params == null || params.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new TreeMap<>(params));
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(query, params);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof CacheKey))
+        return false;
+      CacheKey other = (CacheKey) obj;
+      return query.equals(other.query) && params.equals(other.params);
+    }
+  }
+
+  /**
+   * The result of one query, kept current by the events of the continuous query.
+   */
+  private class CachedResult implements ContinuousQueryListener<K, V> {
+    final Map<K, V> entries = new ConcurrentHashMap<>();
+    long lastAccess;
+    // keys with an event while the result is read directly, null after the result is seeded
+    private Set<K> changed = new HashSet<>();
+
+    /**
+     * Read the current result with the keys, the events received meanwhile are newer and are not overwritten.
+     */
+    @SuppressWarnings("unchecked")
+    void seed(CacheKey key) {
+      Query<V> query = queryFactory.create(key.query);
+      if (!key.params.isEmpty()) {
+        query.setParameters(key.params);
+      }
+      try (CloseableIterator<Map.Entry<Object, Object>> it = cache.retrieveEntriesByQuery(query, null, SEED_BATCH_SIZE)) {
+        while (it.hasNext()) {
+          Map.Entry<Object, Object> e = it.next();
+          synchronized (this) {
+            if (!changed.contains(e.getKey())) {
+              entries.put((K) e.getKey(), (V) e.getValue());
+            }
+          }
+        }
+      }
+      synchronized (this) {
+        changed = null;
+      }
+    }
+
+    @Override
+    public synchronized void resultJoining(K key, V value) {
+      changed(key);
+      entries.put(key, value);
+    }
+
+    @Override
+    public synchronized void resultUpdated(K key, V value) {
+      changed(key);
+      entries.put(key, value);
+    }
+
+    @Override
+    public synchronized void resultLeaving(K key) {
+      changed(key);
+      entries.remove(key);
+    }
+
+    private void changed(K key) {
+      if (changed != null) {
+        changed.add(key);
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.infinispan.query.dsl.Query;
+import org.infinispan.query.dsl.QueryFactory;
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.QueryMetricsRegistry;
+
+/**
+ * Registry for Ickle query templates which use named parameters like ':reader' instead of concatenating the values into the query string. The Query object is created once per template and kept in a LRU cache, for each execution only the parameters are bound. As the query string is always
+ * the same the server can reuse the parsed query as well and the number of different query strings is not growing with the values.
+ *
+ * A Query instance is not thread safe, if the registry is shared by different threads the methods {@link #list(String, Map)} should be used as it binds and executes the query exclusively.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class QueryTemplateRegistry {
+  public static final int DEFAULT_MAX_TEMPLATES = 128;
+
+  private final QueryFactory queryFactory;
+  private final Map<String, CachedQuery<?>> queries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public QueryTemplateRegistry(QueryFactory queryFactory) {
+    this(queryFactory, DEFAULT_MAX_TEMPLATES);
+  }
+
+  public QueryTemplateRegistry(QueryFactory queryFactory, final int maxTemplates) {
+    this.queryFactory = queryFactory;
+    this.queries = new LinkedHashMap<String, CachedQuery<?>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedQuery<?>> eldest) {
+        if (size() > maxTemplates) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Build a parameter map from name/value pairs.
+   */
+  public static Map<String, Object> params(Object... nameValuePairs) {
+    if (nameValuePairs.length % 2 != 0) {
+      throw new IllegalArgumentException("Parameters must be name/value pairs");
+    }
+    if (nameValuePairs.length == 0) {
+      return Collections.emptyMap();
+    }
+    Map<String, Object> params = new HashMap<>();
+    for (int i = 0; i < nameValuePairs.length; i += 2) {
+      params.put((String) nameValuePairs[i], nameValuePairs[i + 1]);
+    }
+    return params;
+  }
+
+  /**
+   * Return the cached Query for the template with the given parameters bound, pagination is reset to the initial values. The returned instance is shared with all other callers for the same template.
+   *
+   * @param template the Ickle query with named parameters
+   * @param params the values for all named parameters of the template
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Query<T> query(String template, Map<String, Object> params) {
+    CachedQuery<T> cached = (CachedQuery<T>) lookup(template);
+    return cached.bind(params);
+  }
+
+  /**
+   * Bind the parameters and execute the query exclusively.
+   *
+   * @param template the Ickle query with named parameters
+   * @param params the values for all named parameters of the template
+   */
+  @SuppressWarnings("unchecked")
+  public <T> List<T> list(String template, Map<String, Object> params) {
+    CachedQuery<T> cached = (CachedQuery<T>) lookup(template);
+    synchronized (cached) {
+      return QueryMetricsRegistry.getDefault().list(cached.bind(params));
+    }
+  }
+
+  private synchronized CachedQuery<?> lookup(String template) {
+    CachedQuery<?> cached = queries.get(template);
+    if (cached == null) {
+      misses.incrementAndGet();
+      cached = new CachedQuery<>(queryFactory.create(template));
+      queries.put(template, cached);
+    } else {
+      hits.incrementAndGet();
+    }
+    return cached;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public synchronized int size() {
+    return queries.size();
+  }
+
+  @Override
+  public String toString() {
+    return "QueryTemplateRegistry [templates=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+  }
+
+  private static class CachedQuery<T> {
+    private final Query<T> query;
+    private final long startOffset;
+    private final int maxResults;
+
+    CachedQuery(Query<T> query) {
+      this.query = query;
+      this.startOffset = query.getStartOffset();
+      this.maxResults = query.getMaxResults();
+    }
+
+    Query<T> bind(Map<String, Object> params) {
+      query.startOffset(startOffset).maxResults(maxResults);
+      if (!params.isEmpty()) {
+        query.setParameters(params);
+      }
+      return query;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+/**
+ * Typed access to the columns of one row of a projection query, the columns are in the order of the select clause. Numbers are converted with the Number methods as the type returned by the server might differ from the field type, e.g. for aggregations.
+ *
+ * The instance is reused for the rows of a result and must not be kept by a RowMapper.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class Row {
+  private Object[] values;
+
+  Row() {
+  }
+
+  Row with(Object[] values) {
+    this.values = values;
+    return this;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  public boolean isNull(int column) {
+    return values[column] == null;
+  }
+
+  public Object get(int column) {
+    return values[column];
+  }
+
+  public String getString(int column) {
+    Object v = values[column];
+    return v == null ? null : v.toString();
+  }
+
+  /**
+   * @return the value or 0 if the column is null
+   */
+  public int getInt(int column) {
+    Object v = values[column];
+    return v == null ? 0 : ((Number) v).intValue();
+  }
+
+  /**
+   * @return the value or 0 if the column is null
+   */
+  public long getLong(int column) {
+    Object v = values[column];
+    return v == null ? 0 : ((Number) v).longValue();
+  }
+
+  /**
+   * @return the value or 0 if the column is null
+   */
+  public double getDouble(int column) {
+    Object v = values[column];
+    return v == null ? 0 : ((Number) v).doubleValue();
+  }
+
+  /**
+   * @return the value or false if the column is null
+   */
+  public boolean getBoolean(int column) {
+    Object v = values[column];
+    return v != null && (Boolean) v;
+  }
+}
@@ -0,0 +1,12 @@
+package org.infinispan.wfink.playground.ickle.hotrod.query;
+
+/**
+ * Convert one row of a projection query into a typed object, e.g. <code>row -> new CompanySummary(row.getInt(0), row.getString(1))</code>.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@FunctionalInterface
+public interface RowMapper<R> {
+
+  R map(Row row);
+}
@@ -0,0 +1,17 @@
+package org.infinispan.wfink.playground.ickle.hotrod.schema;
+
+import org.infinispan.protostream.SerializationContextInitializer;
+import org.infinispan.protostream.annotations.AutoProtoSchemaBuilder;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Company;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.CompanyHeader;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Employee;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.EmployeeChunk;
+
+/**
+ * The protostream annotation processor generates the implementation CompanySchemaImpl at compile time. It contains the 'playground/company.proto' schema and the marshallers for Company and Employee and for the chunked storage CompanyHeader and EmployeeChunk, so there is no reflection or parsing of a .proto file at runtime.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@AutoProtoSchemaBuilder(includeClasses = { Company.class, Employee.class, CompanyHeader.class, EmployeeChunk.class }, schemaFileName = "company.proto", schemaFilePath = "playground", schemaPackageName = "playground")
+public interface CompanySchema extends SerializationContextInitializer {
+}
@@ -0,0 +1,14 @@
+package org.infinispan.wfink.playground.ickle.hotrod.schema;
+
+import org.infinispan.protostream.SerializationContextInitializer;
+import org.infinispan.protostream.annotations.AutoProtoSchemaBuilder;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+
+/**
+ * The protostream annotation processor generates the implementation MessageSchemaImpl at compile time. It contains the 'message.proto' schema and the marshaller for Message, so the ProtoSchemaBuilder does not need to inspect the class by reflection at each start.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+@AutoProtoSchemaBuilder(includeClasses = { Message.class }, schemaFileName = "message.proto", schemaPackageName = "playground")
+public interface MessageSchema extends SerializationContextInitializer {
+}
@@ -0,0 +1,93 @@
+package org.infinispan.wfink.playground.ickle.hotrod.schema;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infinispan.client.hotrod.Flag;
+import org.infinispan.client.hotrod.MetadataValue;
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.RemoteCacheManager;
+import org.infinispan.client.hotrod.marshall.MarshallerUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.SerializationContextInitializer;
+import org.infinispan.query.remote.client.ProtobufMetadataManagerConstants;
+
+/**
+ * Register a schema which is generated at compile time with the client and the server. The schema is only written to the server if the content differs from the registered one, an unchanged schema does not cause a validation and reindexing at server side. The check is done
+ * once per JVM, so further clients for the same server will not access the metadata cache again.
+ *
+ * Many clients which start at the same time will not overwrite each other, the schema is written with a versioned operation and the content is compared again if another client was faster.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public final class SchemaRegistration {
+  private static final int MAX_ATTEMPTS = 3;
+  // server + schema name -> hash of the schema which is registered without errors
+  private static final Map<String, String> VERIFIED = new ConcurrentHashMap<>();
+
+  private SchemaRegistration() {
+  }
+
+  /**
+   * Register the schema and marshallers with the client and make sure the server has the same schema.
+   *
+   * @param remoteCacheManager the client
+   * @param schema the generated schema
+   * @param serverName the name of the schema in the server metadata cache
+   * @return true if the schema was written to the server
+   * @throws IllegalStateException if the schema registered at the server has errors
+   */
+  public static boolean register(RemoteCacheManager remoteCacheManager, SerializationContextInitializer schema, String serverName) {
+    SerializationContext ctx = MarshallerUtil.getSerializationContext(remoteCacheManager);
+    schema.registerSchema(ctx);
+    schema.registerMarshallers(ctx);
+
+    String content = schema.getProtoFile();
+    String hash = hash(content);
+    String verifiedKey = remoteCacheManager.getConfiguration().servers() + "/" + serverName;
+    if (hash.equals(VERIFIED.get(verifiedKey))) {
+      return false;
+    }
+
+    RemoteCache<String, String> metadataCache = remoteCacheManager.getCache(ProtobufMetadataManagerConstants.PROTOBUF_METADATA_CACHE_NAME);
+    boolean written = false;
+    for (int attempt = 1;; attempt++) {
+      MetadataValue<String> registered = metadataCache.getWithMetadata(serverName);
+      if (registered != null && hash.equals(hash(registered.getValue()))) {
+        break;
+      }
+      written = registered == null ? metadataCache.withFlags(Flag.FORCE_RETURN_VALUE).putIfAbsent(serverName, content) == null : metadataCache.replaceWithVersion(serverName, content, registered.getVersion());
+      if (written) {
+        break;
+      }
+      if (attempt == MAX_ATTEMPTS) {
+        throw new IllegalStateException("Schema '" + serverName + "' is concurrently changed by other clients");
+      }
+    }
+
+    // the errors of the schema file, the server set this key after the validation
+    String errors = metadataCache.get(serverName + ProtobufMetadataManagerConstants.ERRORS_KEY_SUFFIX);
+    if (errors != null) {
+      throw new IllegalStateException("The Protobuf schema '" + serverName + "' contains errors: " + errors + "\nSchema :\n" + content);
+    }
+    VERIFIED.put(verifiedKey, hash);
+    System.out.printf("Schema %s %s (sha-256 %s)\n", serverName, written ? "registered" : "unchanged", hash);
+    return written;
+  }
+
+  static String hash(String content) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package org.infinispan.wfink.playground.ickle.loaddriver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.RemoteCacheManager;
+import org.infinispan.client.hotrod.Search;
+import org.infinispan.query.api.continuous.ContinuousQuery;
+import org.infinispan.wfink.playground.ickle.hotrod.RemoteCacheManagerFactory;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+import org.infinispan.wfink.playground.ickle.hotrod.listener.ContinuousQueryMultiplexer;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.MessageSchemaImpl;
+import org.infinispan.wfink.playground.ickle.hotrod.schema.SchemaRegistration;
+
+/**
+ * A headless driver for the continuous query example to size the number of readers a server can handle. Each simulated reader has its own continuous query for its messages, or with -shards the readers share a few continuous queries as the MessageContinuousQueryHotRodClient. The writers put
+ * and remove messages of all readers at a fixed rate and the driver reports the throughput and the latency from the put until the event is received by the reader.
+ *
+ * Readers and writers run on virtual threads, so thousands of readers can block while they register their query. By default an in-process Hot Rod server is started, use -external to connect to a running server.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ContinuousQueryLoadDriver {
+  private static final String READER_QUERY = "FROM playground.Message m WHERE m.reader = :reader";
+  private static final int REGISTRATION_CONCURRENCY = 64;
+  private static final long MULTIPLEXER_BATCH_MILLIS = 50;
+  private static final long DRAIN_QUIET_MILLIS = 1000;
+  private static final long DRAIN_MAX_MILLIS = 30000;
+
+  private final RemoteCacheManager remoteCacheManager;
+  private final RemoteCache<String, Message> messageCache;
+  private final ContinuousQueryMultiplexer<String, Message> multiplexer;
+  private final List<ReaderSession> readers = new ArrayList<>();
+  private final Map<ReaderSession, ContinuousQuery<String, Message>> readerQueries = new ConcurrentHashMap<>();
+  private final LoadStatistics statistics = new LoadStatistics();
+
+  public ContinuousQueryLoadDriver(String host, String port, String cacheName, int shards) {
+    remoteCacheManager = RemoteCacheManagerFactory.create(host, port);
+    messageCache = remoteCacheManager.getCache(cacheName);
+    if (messageCache == null) {
+      throw new RuntimeException("Cache '" + cacheName + "' not found. Please make sure the server is properly configured");
+    }
+    SchemaRegistration.register(remoteCacheManager, new MessageSchemaImpl(), "message.proto");
+    // the QueryFactory registers the types of the query protocol with the client, which are needed to read the continuous query events
+    Search.getQueryFactory(messageCache);
+    multiplexer = shards > 0 ? new ContinuousQueryMultiplexer<>(messageCache, "playground.Message m", "m.reader", Message::getReader, shards, MULTIPLEXER_BATCH_MILLIS, TimeUnit.MILLISECONDS) : null;
+  }
+
+  /**
+   * Register the continuous queries of all readers concurrently, the number of registrations in progress is limited to not flood the server.
+   */
+  private void registerReaders(int count) throws InterruptedException {
+    System.out.printf("Registering %d readers %s\n", count, multiplexer == null ? "with one continuous query each" : "with " + multiplexer);
+    long start = System.nanoTime();
+    Semaphore inProgress = new Semaphore(REGISTRATION_CONCURRENCY);
+    try (ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("reader-", 0).factory())) {
+      for (int i = 0; i < count; i++) {
+        ReaderSession reader = new ReaderSession(ReaderSession.readerName(i), statistics);
+        readers.add(reader);
+        inProgress.acquire();
+        executor.execute(() -> {
+          try {
+            if (multiplexer != null) {
+              // concurrent subscriptions are registered together, wait until the initial result of the reader is delivered
+              multiplexer.subscribe(reader.getReaderName(), reader).join();
+            } else {
+              // a ContinuousQuery instance is not thread safe, each reader use its own
+              ContinuousQuery<String, Message> continuousQuery = Search.getContinuousQuery(messageCache);
+              continuousQuery.addContinuousQueryListener(READER_QUERY, Map.of("reader", reader.getReaderName()), reader);
+              readerQueries.put(reader, continuousQuery);
+            }
+            statistics.registeredReaders.increment();
+          } catch (Exception e) {
+            System.err.printf("Failed to register %s : %s\n", reader.getReaderName(), e.getMessage());
+          } finally {
+            inProgress.release();
+          }
+        });
+      }
+    }
+    System.out.printf("  %d readers registered in %d ms\n", statistics.registeredReaders.sum(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /**
+   * Run the writers until the duration is reached.
+   */
+  private void write(int writers, double rate, long durationSeconds, int keySpace, double removeRatio, int textSize) {
+    System.out.printf("Running %d writers with %.0f writes/s for %d s\n", writers, rate, durationSeconds);
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+    try (ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("writer-", 0).factory())) {
+      for (int i = 0; i < writers; i++) {
+        executor.execute(new WriterSession(i, messageCache, statistics, readers.size(), keySpace, removeRatio, rate / writers, end, textSize));
+      }
+    }
+  }
+
+  /**
+   * Wait until no event is received for a while, so the latency of the last writes is recorded as well.
+   */
+  private void drain() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + DRAIN_MAX_MILLIS;
+    long events = -1;
+    while (events != statistics.getEvents() && System.currentTimeMillis() < deadline) {
+      events = statistics.getEvents();
+      Thread.sleep(DRAIN_QUIET_MILLIS);
+    }
+  }
+
+  private void stop() {
+    if (multiplexer != null) {
+      multiplexer.close();
+    }
+    // each listener has its own connection, the server removes the listeners of the readers when the connections are closed
+    readerQueries.clear();
+    remoteCacheManager.stop();
+  }
+
+  private static void usage() {
+    System.out.println("Options:\n" + "  -readers <n>        number of readers, default 1000\n" + "  -writers <n>        number of writers, default 4\n" + "  -rate <n>           writes per second of all writers, default 1000\n" + "  -duration <s>       seconds to write, default 30\n"
+        + "  -keys <n>           number of different messages, default 100000\n" + "  -removeRatio <r>    probability of a remove, default 0.1\n" + "  -textSize <n>       length of the message text, default 100\n"
+        + "  -shards <n>         share n continuous queries for all readers, default 0 for one query per reader\n" + "  -report <s>         seconds between the reports, default 5\n" + "  -external           use a running server instead of the in-process server\n"
+        + "  -host <host>        server address, default localhost\n" + "  -port <port>        server port, default 11222\n" + "  -clear              clear the cache before the run\n");
+  }
+
+  public static void main(String[] args) throws Exception {
+    String host = "127.0.0.1";
+    int port = 11222;
+    String cacheName = "IcklePlayMessageCache";
+    boolean external = false;
+    boolean clear = false;
+    int readerCount = 1000;
+    int writerCount = 4;
+    double rate = 1000;
+    long duration = 30;
+    int keySpace = 100000;
+    double removeRatio = 0.1;
+    int textSize = 100;
+    int shards = 0;
+    long reportSeconds = 5;
+
+    int argc = 0;
+    while (argc < args.length) {
+      String option = args[argc++];
+      if (option.equals("-external")) {
+        external = true;
+        continue;
+      } else if (option.equals("-clear")) {
+        clear = true;
+        continue;
+      } else if (argc == args.length) {
+        System.out.printf("option '%s' needs a value\n", option);
+        usage();
+        System.exit(1);
+      }
+      String value = args[argc++];
+      switch (option) {
+      case "-host" -> host = value;
+      case "-port" -> port = Integer.parseInt(value);
+      case "-readers" -> readerCount = Integer.parseInt(value);
+      case "-writers" -> writerCount = Integer.parseInt(value);
+      case "-rate" -> rate = Double.parseDouble(value);
+      case "-duration" -> duration = Long.parseLong(value);
+      case "-keys" -> keySpace = Integer.parseInt(value);
+      case "-removeRatio" -> removeRatio = Double.parseDouble(value);
+      case "-textSize" -> textSize = Integer.parseInt(value);
+      case "-shards" -> shards = Integer.parseInt(value);
+      case "-report" -> reportSeconds = Long.parseLong(value);
+      default -> {
+        System.out.printf("option '%s' unknown\n", option);
+        usage();
+        System.exit(1);
+      }
+      }
+    }
+
+    EmbeddedHotRodServer server = external ? null : new EmbeddedHotRodServer(host, port, cacheName);
+    ContinuousQueryLoadDriver driver = new ContinuousQueryLoadDriver(host, String.valueOf(port), cacheName, shards);
+    if (clear) {
+      driver.messageCache.clear();
+    }
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("LoadDriver-report").factory());
+    try {
+      driver.registerReaders(readerCount);
+      reporter.scheduleAtFixedRate(driver.statistics::report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+      driver.write(writerCount, rate, duration, keySpace, removeRatio, textSize);
+      driver.drain();
+    } finally {
+      reporter.shutdownNow();
+      System.out.println(driver.statistics);
+      driver.stop();
+      if (server != null) {
+        server.close();
+      }
+    }
+    System.out.println("\nDone !");
+  }
+}
@@ -0,0 +1,49 @@
+package org.infinispan.wfink.playground.ickle.loaddriver;
+
+import org.infinispan.commons.dataconversion.MediaType;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.server.hotrod.HotRodServer;
+import org.infinispan.server.hotrod.configuration.HotRodServerConfigurationBuilder;
+
+/**
+ * A Hot Rod server running inside the load driver, so the driver does not need an installed server. The caches are local and store the values as Protobuf, which is needed for remote and continuous queries. The caches are not indexed as a continuous query does not use the index.
+ *
+ * The remote query support is added by infinispan-remote-query-server on the classpath, the client registers the schema in the ___protobuf_metadata cache as for a standalone server.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class EmbeddedHotRodServer implements AutoCloseable {
+  private final DefaultCacheManager cacheManager;
+  private final HotRodServer server;
+
+  /**
+   * Start the server and define the caches.
+   *
+   * @param host the address to bind
+   * @param port the Hot Rod port
+   * @param cacheNames the caches to create
+   */
+  public EmbeddedHotRodServer(String host, int port, String... cacheNames) {
+    GlobalConfigurationBuilder global = new GlobalConfigurationBuilder().nonClusteredDefault();
+    global.defaultCacheName("default");
+    ConfigurationBuilder cache = new ConfigurationBuilder();
+    cache.encoding().key().mediaType(MediaType.APPLICATION_PROTOSTREAM_TYPE);
+    cache.encoding().value().mediaType(MediaType.APPLICATION_PROTOSTREAM_TYPE);
+    cacheManager = new DefaultCacheManager(global.build(), cache.build());
+    for (String name : cacheNames) {
+      cacheManager.defineConfiguration(name, cache.build());
+    }
+
+    server = new HotRodServer();
+    server.start(new HotRodServerConfigurationBuilder().host(host).port(port).defaultCacheName("default").build(), cacheManager);
+    System.out.printf("In-process Hot Rod server started at %s:%d with caches %s\n", host, port, String.join(", ", cacheNames));
+  }
+
+  @Override
+  public void close() {
+    server.stop();
+    cacheManager.stop();
+  }
+}
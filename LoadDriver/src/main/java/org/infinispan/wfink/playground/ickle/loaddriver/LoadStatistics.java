@@ -0,0 +1,59 @@
+package org.infinispan.wfink.playground.ickle.loaddriver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.infinispan.wfink.playground.ickle.hotrod.metrics.LatencyHistogram;
+
+/**
+ * Counters of the writers and readers. The event latency is the time from the start of the put until the joining or updated event is received by the reader, the writer sends its System.nanoTime() with the message, which is comparable as all run in the same JVM.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class LoadStatistics {
+  final LongAdder puts = new LongAdder();
+  final LongAdder removes = new LongAdder();
+  final LongAdder writeFailures = new LongAdder();
+  final LongAdder joining = new LongAdder();
+  final LongAdder updated = new LongAdder();
+  final LongAdder leaving = new LongAdder();
+  final LongAdder registeredReaders = new LongAdder();
+  final LatencyHistogram eventLatency = new LatencyHistogram();
+  final LatencyHistogram writeLatency = new LatencyHistogram();
+
+  private long lastNanos = System.nanoTime();
+  private long lastWrites;
+  private long lastEvents;
+
+  public long getWrites() {
+    return puts.sum() + removes.sum();
+  }
+
+  public long getEvents() {
+    return joining.sum() + updated.sum() + leaving.sum();
+  }
+
+  /**
+   * Print the rates since the last report and the latency since the start.
+   */
+  public synchronized void report() {
+    long now = System.nanoTime();
+    long writes = getWrites();
+    long events = getEvents();
+    double seconds = (now - lastNanos) / 1e9;
+    System.out.printf("  readers=%d writes/s=%.0f events/s=%.0f write p99=%.2fms event p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms\n", registeredReaders.sum(), (writes - lastWrites) / seconds, (events - lastEvents) / seconds, millis(writeLatency.getPercentileNanos(99)),
+        millis(eventLatency.getPercentileNanos(50)), millis(eventLatency.getPercentileNanos(99)), millis(eventLatency.getPercentileNanos(99.9)), millis(eventLatency.getMaxNanos()));
+    lastNanos = now;
+    lastWrites = writes;
+    lastEvents = events;
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  @Override
+  public String toString() {
+    return "LoadStatistics [readers=" + registeredReaders + ", puts=" + puts + ", removes=" + removes + ", writeFailures=" + writeFailures + ", joining=" + joining + ", updated=" + updated + ", leaving=" + leaving + ", eventLatency(mean/p50/p99/p99.9/max ms)="
+        + String.format("%.2f/%.2f/%.2f/%.2f/%.2f", eventLatency.getMeanNanos() / 1e6, millis(eventLatency.getPercentileNanos(50)), millis(eventLatency.getPercentileNanos(99)), millis(eventLatency.getPercentileNanos(99.9)), millis(eventLatency.getMaxNanos())) + "]";
+  }
+}
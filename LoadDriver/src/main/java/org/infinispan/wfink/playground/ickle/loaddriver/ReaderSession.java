@@ -0,0 +1,77 @@
+package org.infinispan.wfink.playground.ickle.loaddriver;
+
+import org.infinispan.query.api.continuous.ContinuousQueryListener;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+
+/**
+ * The listener of one simulated reader. It counts the events and records the latency of joining and updated events, the text of a message written by the driver starts with the System.nanoTime() of the put.
+ *
+ * The events are delivered by the event thread of the Hot Rod client, so the listener does only count.
+ *
+ * The joining events of the initial result carry messages which are put before the session is created, maybe by another process or not by the driver at all, so only messages with a parsable timestamp
+ * not older than the session are recorded.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class ReaderSession implements ContinuousQueryListener<String, Message> {
+  static final char TIMESTAMP_SEPARATOR = '|';
+
+  private final String readerName;
+  private final LoadStatistics statistics;
+  private final long createdNanos = System.nanoTime();
+
+  public ReaderSession(String readerName, LoadStatistics statistics) {
+    this.readerName = readerName;
+    this.statistics = statistics;
+  }
+
+  /**
+   * The name of the reader with the given number, the writers use it to address a reader.
+   */
+  public static String readerName(int reader) {
+    return "reader-" + reader;
+  }
+
+  public String getReaderName() {
+    return readerName;
+  }
+
+  @Override
+  public void resultJoining(String key, Message value) {
+    statistics.joining.increment();
+    recordLatency(value);
+  }
+
+  @Override
+  public void resultUpdated(String key, Message value) {
+    statistics.updated.increment();
+    recordLatency(value);
+  }
+
+  @Override
+  public void resultLeaving(String key) {
+    statistics.leaving.increment();
+  }
+
+  private void recordLatency(Message value) {
+    String text = value.getText();
+    int end = text == null ? -1 : text.indexOf(TIMESTAMP_SEPARATOR);
+    if (end > 0) {
+      long sent;
+      try {
+        sent = Long.parseLong(text, 0, end, 10);
+      } catch (NumberFormatException e) {
+        return;
+      }
+      long now = System.nanoTime();
+      if (sent - createdNanos >= 0 && now - sent >= 0) {
+        statistics.eventLatency.record(now - sent);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ReaderSession [readerName=" + readerName + "]";
+  }
+}
@@ -0,0 +1,84 @@
+package org.infinispan.wfink.playground.ickle.loaddriver;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.wfink.playground.ickle.hotrod.MessageWriter;
+import org.infinispan.wfink.playground.ickle.hotrod.domain.Message;
+
+/**
+ * One simulated writer. It writes at a fixed rate random messages out of a key space, a message is removed with the given probability, otherwise it is put with a new text. A message id belongs always to the same reader, so a put is a joining or updated event for this reader.
+ *
+ * The writes are scheduled at fixed times, if a write takes longer the next ones are started without pause until the schedule is reached again.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class WriterSession implements Runnable {
+  private final int writer;
+  private final RemoteCache<String, Message> cache;
+  private final LoadStatistics statistics;
+  private final int readers;
+  private final int keySpace;
+  private final double removeRatio;
+  private final long intervalNanos;
+  private final long endNanos;
+  private final String padding;
+
+  /**
+   * @param writer the number of the writer
+   * @param readers the number of readers the messages are addressed to
+   * @param keySpace the number of different message ids
+   * @param removeRatio the probability of a remove between 0 and 1
+   * @param rate the writes per second of this writer
+   * @param endNanos the System.nanoTime() to stop
+   * @param textSize the length of the message text
+   */
+  public WriterSession(int writer, RemoteCache<String, Message> cache, LoadStatistics statistics, int readers, int keySpace, double removeRatio, double rate, long endNanos, int textSize) {
+    if (readers < 1) {
+      throw new IllegalArgumentException("at least one reader is needed : " + readers);
+    }
+    if (rate <= 0) {
+      throw new IllegalArgumentException("rate must be positive : " + rate);
+    }
+    this.writer = writer;
+    this.cache = cache;
+    this.statistics = statistics;
+    this.readers = readers;
+    this.keySpace = keySpace;
+    this.removeRatio = removeRatio;
+    this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    this.endNanos = endNanos;
+    this.padding = "x".repeat(Math.max(0, textSize));
+  }
+
+  @Override
+  public void run() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long next = System.nanoTime();
+    while (next < endNanos && !Thread.currentThread().isInterrupted()) {
+      long wait = next - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      int id = random.nextInt(keySpace);
+      String key = String.valueOf(id);
+      long start = System.nanoTime();
+      try {
+        if (random.nextDouble() < removeRatio) {
+          cache.remove(key);
+          statistics.removes.increment();
+        } else {
+          // the version is increased like all clients do, so the latency includes reading the current version
+          MessageWriter.put(cache, new Message(id, start + String.valueOf(ReaderSession.TIMESTAMP_SEPARATOR) + padding, "writer-" + writer, ReaderSession.readerName(id % readers)));
+          statistics.puts.increment();
+        }
+        statistics.writeLatency.record(System.nanoTime() - start);
+      } catch (Exception e) {
+        statistics.writeFailures.increment();
+      }
+      next += intervalNanos;
+    }
+  }
+}
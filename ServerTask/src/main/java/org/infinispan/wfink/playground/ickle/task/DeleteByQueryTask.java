@@ -0,0 +1,109 @@
+package org.infinispan.wfink.playground.ickle.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.infinispan.Cache;
+import org.infinispan.query.Search;
+import org.infinispan.query.dsl.Query;
+import org.infinispan.tasks.ServerTask;
+import org.infinispan.tasks.TaskContext;
+
+/**
+ * A server task to delete all entries which match an Ickle query. The query is executed at server side and the keys are removed in batches without transferring them to the client. The task need to be executed with the cache which should be purged, e.g. RemoteCache.execute(NAME, params).
+ *
+ * Parameters:
+ * <ul>
+ * <li>query - an Ickle projection query where the first column is the key of the entry, e.g. "select c.id from playground.Company c where c.isStockCompany = false"</li>
+ * <li>batchSize - optional, number of keys which are selected and removed in one step, default is 1000</li>
+ * <li>stringKey - optional, set to true if the cache key is the String value of the projection, e.g. for the Message cache</li>
+ * </ul>
+ * The result is the number of removed entries.
+ *
+ * @author <a href="mailto:WolfDieter.Fink@gmail.com">Wolf-Dieter Fink</a>
+ */
+public class DeleteByQueryTask implements ServerTask<Integer> {
+  public static final String NAME = "ickle-delete-by-query";
+  public static final String PARAM_QUERY = "query";
+  public static final String PARAM_BATCH_SIZE = "batchSize";
+  public static final String PARAM_STRING_KEY = "stringKey";
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+
+  // the task instance is shared by concurrent executions, the context is set and used by the thread of the execution
+  private final ThreadLocal<TaskContext> taskContext = new ThreadLocal<>();
+
+  @Override
+  public void setTaskContext(TaskContext ctx) {
+    taskContext.set(ctx);
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public Set<String> getParameters() {
+    Set<String> params = new HashSet<>();
+    params.add(PARAM_QUERY);
+    params.add(PARAM_BATCH_SIZE);
+    params.add(PARAM_STRING_KEY);
+    return params;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Integer call() throws Exception {
+    final TaskContext ctx = taskContext.get();
+    taskContext.remove();
+    if (ctx == null) {
+      throw new IllegalStateException("The task " + NAME + " is executed without a context");
+    }
+    final Cache<Object, Object> cache = (Cache<Object, Object>) ctx.getCache().orElseThrow(() -> new IllegalStateException("The task " + NAME + " must be executed with a cache"));
+    final Map<String, ?> params = ctx.getParameters().orElse(Collections.emptyMap());
+    final Object queryString = params.get(PARAM_QUERY);
+    if (queryString == null) {
+      throw new IllegalArgumentException("Parameter '" + PARAM_QUERY + "' is missing");
+    }
+    final int batchSize = params.containsKey(PARAM_BATCH_SIZE) ? Integer.parseInt(String.valueOf(params.get(PARAM_BATCH_SIZE))) : DEFAULT_BATCH_SIZE;
+    final boolean stringKey = Boolean.parseBoolean(String.valueOf(params.get(PARAM_STRING_KEY)));
+
+    final Query<Object[]> query = Search.getQueryFactory(cache).create(String.valueOf(queryString));
+    if (!query.hasProjections()) {
+      throw new IllegalArgumentException("The query must be a projection with the key as first column : " + queryString);
+    }
+
+    int removed = 0;
+    Set<Object> previousBatch = Collections.emptySet();
+    while (true) {
+      // removed entries are not longer part of the result, so the next batch starts always with the first match
+      List<Object[]> rows = query.startOffset(0).maxResults(batchSize).execute().list();
+      Set<Object> batch = new HashSet<>(rows.size() * 4 / 3 + 1);
+      for (Object[] row : rows) {
+        batch.add(stringKey ? String.valueOf(row[0]) : row[0]);
+      }
+      // stop if there are no more matches or the removed keys are still found (should not happen with synchronous indexing)
+      if (batch.isEmpty() || previousBatch.containsAll(batch)) {
+        break;
+      }
+      // the previous value is returned inside the server only, it shows whether the entry was removed by this task or concurrently
+      List<CompletableFuture<Object>> futures = new ArrayList<>(batch.size());
+      for (Object key : batch) {
+        futures.add(cache.removeAsync(key));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+      for (CompletableFuture<Object> future : futures) {
+        if (future.join() != null) {
+          removed++;
+        }
+      }
+      previousBatch = batch;
+    }
+    return removed;
+  }
+}